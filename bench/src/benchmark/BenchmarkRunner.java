@@ -0,0 +1,33 @@
+package benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the training and prediction benchmarks and writes the results as JSON,
+ * so runs from different releases can be compared.
+ * 
+ * The benchmarks are built by bench/pom.xml against the jar of the main
+ * sources. The part1 and part3 benchmarks live in those packages, so they can
+ * reach package-private code. From the repository root:
+ * 
+ *   mvn -B install
+ *   mvn -B -f bench/pom.xml package
+ *   java -jar bench/target/benchmarks.jar [results.json [benchmark regex]]
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException {
+		String resultFile = args.length > 0 ? args[0] : "jmh-result.json";
+		String include = args.length > 1 ? args[1] : "part[13]\\..*Benchmark";
+		Options options = new OptionsBuilder()
+				.include(include)
+				.resultFormat(ResultFormatType.JSON)
+				.result(resultFile)
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,40 @@
+package benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Training and classifying print progress to System.out. The benchmarks
+ * swap in this stream so that printing is not what gets measured.
+ */
+public final class NullOutput {
+
+	private static final PrintStream NULL = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	});
+
+	private static PrintStream saved;
+
+	private NullOutput() {
+	}
+
+	public static synchronized void silence() {
+		if (saved == null) {
+			saved = System.out;
+			System.setOut(NULL);
+		}
+	}
+
+	public static synchronized void restore() {
+		if (saved != null) {
+			System.setOut(saved);
+			saved = null;
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package part1;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmark.NullOutput;
+import common.BatchClassifier;
+import common.SyntheticDataGenerator;
+
+/**
+ * Training and prediction hot paths of {@link DecisionTree}, on data of varying
+ * size and shape generated from resources/simple_mushroom.txt, so run from
+ * the repository root.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DecisionTreeBenchmark {
+
+	/**
+	 * Rows kept aside, already encoded, for the single-row benchmark.
+	 */
+	private static final int PREDICT_ROWS = 4096;
+
+	/**
+	 * The file the data is generated from, and its class column and values.
+	 */
+	private static final String SEED_FILE = "resources/simple_mushroom.txt";
+	private static final int SEED_CLASS_COLUMN = 0;
+	private static final String POSITIVE = "e";
+	private static final String NEGATIVE = "p";
+
+	@Param({ "10000", "100000" })
+	public int rows;
+
+	@Param({ "8", "23" })
+	public int columns;
+
+	/**
+	 * How many variants each value of the seed file gets.
+	 */
+	@Param({ "1", "3" })
+	public int cardinalityScale;
+
+	File dataFile;
+	private int classColumn;
+	private DecisionTree trained;
+	private int numRows;
+	private List<Integer> attributes;
+	private int[][] encodedRows;
+	private int nextRow;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		NullOutput.silence();
+		SyntheticDataGenerator generator = new SyntheticDataGenerator(SEED_FILE, SEED_CLASS_COLUMN);
+		generator.setColumns(columns);
+		generator.setCardinalityScale(cardinalityScale);
+		classColumn = generator.getOutputClassColumn();
+		dataFile = File.createTempFile("id3-bench", ".txt");
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(dataFile), "UTF-8"), 1 << 16);
+		try {
+			generator.generate(out, rows, 42L);
+		} finally {
+			out.close();
+		}
+
+		trained = newTree();
+		trained.readData(dataFile.getPath());
+		trained.createDecisionTree();
+
+		numRows = trained.dataset.numRows();
+		attributes = new ArrayList<Integer>();
+		for (int i = 0; i < columns; i++) {
+			attributes.add(i);
+		}
+		encodedRows = new int[Math.min(PREDICT_ROWS, numRows)][columns];
+		for (int r = 0; r < encodedRows.length; r++) {
+			for (int i = 0; i < columns; i++) {
+				encodedRows[r][i] = trained.dataset.getCode(r, i);
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		dataFile.delete();
+		NullOutput.restore();
+	}
+
+	DecisionTree newTree() {
+		return new DecisionTree(classColumn, POSITIVE, NEGATIVE);
+	}
+
+	/**
+	 * A tree with its data read, ready to be trained.
+	 */
+	@State(Scope.Thread)
+	public static class UntrainedTree {
+		DecisionTree tree;
+
+		@Setup(Level.Invocation)
+		public void setUp(DecisionTreeBenchmark benchmark) throws IOException {
+			tree = benchmark.newTree();
+			tree.readData(benchmark.dataFile.getPath());
+		}
+	}
+
+	@Benchmark
+	public DecisionTree readData() throws IOException {
+		DecisionTree tree = newTree();
+		tree.readData(dataFile.getPath());
+		return tree;
+	}
+
+	/**
+	 * Choosing the root split: the contingency table plus the entropy of every candidate.
+	 */
+	@Benchmark
+	public int selectSplit() {
+		int[][][] counts = trained.countValuesByClass(0, numRows, attributes);
+		int best = -1;
+		double bestEntropy = Double.MAX_VALUE;
+		for (int column : attributes) {
+			if (column == classColumn) {
+				continue;
+			}
+			double entropy = trained.calculateSplitEntropy(counts[column], numRows);
+			if (entropy < bestEntropy) {
+				bestEntropy = entropy;
+				best = column;
+			}
+		}
+		return best;
+	}
+
+	@Benchmark
+	public DecisionTree createDecisionTree(UntrainedTree untrained) {
+		untrained.tree.createDecisionTree();
+		return untrained.tree;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public int predictRow() {
+		int[] row = encodedRows[nextRow];
+		nextRow = nextRow + 1 == encodedRows.length ? 0 : nextRow + 1;
+		return trained.compiledTree.predict(row);
+	}
+
+	/**
+	 * Classifying the whole data file, on every core.
+	 */
+	@Benchmark
+	public long predictBatch() throws IOException {
+		BufferedReader in = new BufferedReader(new FileReader(dataFile));
+		try {
+			in.readLine();
+			return new BatchClassifier(trained.compiledTree, trained.dataset.getDictionaries(), classColumn,
+					Runtime.getRuntime().availableProcessors()).classify(in, null).getCorrect();
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package common;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Classifies a large test file on several threads. The calling thread reads
+ * the file into chunks of lines; the workers tokenize, encode and score each
+ * chunk against a compiled tree. Chunks are collected in order, so counts are
+ * merged and predictions reach the sink in the same order as the input.
+ * 
+ * At most two chunks per worker are in flight, so a slow sink or slow workers
+ * hold back the reader instead of filling the heap.
+ */
+public class BatchClassifier {
+
+	/**
+	 * Lines handed to a worker at a time.
+	 */
+	static final int CHUNK_SIZE = 8192;
+
+	private final CompiledTree tree;
+	private final ValueDictionary[] dictionaries;
+	private final int classColumn;
+	private final int threads;
+
+	/**
+	 * @param tree The trained tree.
+	 * @param dictionaries The training dictionary of each column, used to encode test values.
+	 * @param classColumn The column holding the class.
+	 * @param threads The number of worker threads.
+	 */
+	public BatchClassifier(CompiledTree tree, ValueDictionary[] dictionaries, int classColumn, int threads) {
+		this.tree = tree;
+		this.dictionaries = dictionaries;
+		this.classColumn = classColumn;
+		this.threads = threads;
+	}
+
+	/**
+	 * Classifies every remaining line of the input. Any header line must
+	 * already have been read.
+	 * @param in The test data, one row per line.
+	 * @param sink Receives each prediction, or null if only the counts are wanted.
+	 * @return The number of rows and correct predictions, and the time taken.
+	 * @throws IOException If the input can't be read, or the sink fails.
+	 */
+	public Result classify(BufferedReader in, PredictionSink sink) throws IOException {
+		long start = System.nanoTime();
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		ArrayDeque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+		Result result = new Result();
+		try {
+			String[] lines = new String[CHUNK_SIZE];
+			int count = 0;
+			String input;
+			while ((input = in.readLine()) != null) {
+				lines[count++] = input;
+				if (count == CHUNK_SIZE) {
+					pending.add(workers.submit(new ChunkTask(lines, count)));
+					lines = new String[CHUNK_SIZE];
+					count = 0;
+					if (pending.size() >= 2 * threads) {
+						merge(pending.poll(), result, sink);
+					}
+				}
+			}
+			if (count > 0) {
+				pending.add(workers.submit(new ChunkTask(lines, count)));
+			}
+			while (!pending.isEmpty()) {
+				merge(pending.poll(), result, sink);
+			}
+		} finally {
+			workers.shutdownNow();
+		}
+		result.nanos = System.nanoTime() - start;
+		return result;
+	}
+
+	private void merge(Future<Chunk> future, Result result, PredictionSink sink) throws IOException {
+		Chunk chunk;
+		try {
+			chunk = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while classifying.", e);
+		} catch (ExecutionException e) {
+			throw new IOException("A worker failed while classifying.", e.getCause());
+		}
+		if (sink != null) {
+			ValueDictionary classes = dictionaries[classColumn];
+			for (int i = 0; i < chunk.predictions.length; i++) {
+				int predicted = chunk.predictions[i];
+				sink.accept(result.rows + i, predicted < 0 ? null : classes.valueOf(predicted));
+			}
+		}
+		result.rows += chunk.predictions.length;
+		result.correct += chunk.correct;
+	}
+
+	/**
+	 * Encodes and scores one chunk of lines.
+	 */
+	private class ChunkTask implements Callable<Chunk> {
+		private final String[] lines;
+		private final int count;
+
+		ChunkTask(String[] lines, int count) {
+			this.lines = lines;
+			this.count = count;
+		}
+
+		public Chunk call() {
+			Chunk chunk = new Chunk(count);
+			int[] codes = new int[dictionaries.length];
+			for (int r = 0; r < count; r++) {
+				StringTokenizer tokenizer = new StringTokenizer(lines[r]);
+				for (int i = 0; i < codes.length; i++) {
+					codes[i] = tokenizer.hasMoreTokens() ? dictionaries[i].codeOf(tokenizer.nextToken()) : -1;
+				}
+				int predicted = tree.predict(codes);
+				chunk.predictions[r] = predicted;
+				if (predicted >= 0 && predicted == codes[classColumn]) {
+					chunk.correct++;
+				}
+			}
+			return chunk;
+		}
+	}
+
+	private static class Chunk {
+		final int[] predictions;
+		int correct;
+
+		Chunk(int rows) {
+			predictions = new int[rows];
+		}
+	}
+
+	/**
+	 * The outcome of classifying a batch.
+	 */
+	public static class Result {
+		private long rows;
+		private long correct;
+		private long nanos;
+
+		public long getRows() {
+			return rows;
+		}
+
+		public long getCorrect() {
+			return correct;
+		}
+
+		public double getAccuracy() {
+			return (double) correct / rows;
+		}
+
+		public double getRowsPerSecond() {
+			return rows / (nanos / 1e9);
+		}
+	}
+}
@@ -0,0 +1,282 @@
+package common;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads a whitespace-separated data file on several threads. The file is cut
+ * into byte ranges that start and end on line boundaries, and each worker
+ * reads and tokenizes its own range, encoding values with dictionaries of its
+ * own. The calling thread takes the ranges back in file order, merges each
+ * range's dictionaries into the global ones and hands on the rows re-coded.
+ * Since values are merged in the order they first appear in the file, every
+ * value gets the code a single-threaded reader would have given it.
+ *
+ * At most two ranges per worker are in flight, so the heap holds a few
+ * megabytes of the file at a time however large it is. The file must be in
+ * an encoding where a newline byte always ends a line, such as UTF-8.
+ */
+public class ChunkedLoader {
+
+	/**
+	 * Bytes of the file in each range, give or take the rest of a line.
+	 */
+	static final int CHUNK_BYTES = 4 << 20;
+
+	private final FileChannel channel;
+	private final long length;
+	private final int threads;
+	private final Charset charset = Charset.defaultCharset();
+	// Where the first row starts, once the header has been read.
+	private long dataStart;
+	private String badLine;
+
+	/**
+	 * Receives the rows of a load, in file order.
+	 */
+	public interface RowSink {
+
+		/**
+		 * @param row The dictionary code of each column's value, indexed by column.
+		 * The array is new, so it may be kept.
+		 */
+		void add(int[] row);
+	}
+
+	/**
+	 * @param fileName The data file.
+	 * @param threads The number of worker threads.
+	 * @throws IOException If the file can't be opened.
+	 */
+	public ChunkedLoader(String fileName, int threads) throws IOException {
+		channel = new FileInputStream(fileName).getChannel();
+		length = channel.size();
+		this.threads = threads;
+	}
+
+	/**
+	 * Reads the first line of the file.
+	 * @return The line, without its line ending, or null if the file is empty.
+	 * @throws IOException If the file can't be read.
+	 */
+	public String readHeader() throws IOException {
+		if (length == 0) {
+			return null;
+		}
+		dataStart = lineStartAfter(0);
+		byte[] header = new byte[(int) dataStart];
+		readFully(header, 0);
+		int end = header.length;
+		while (end > 0 && (header[end - 1] == '\n' || header[end - 1] == '\r')) {
+			end--;
+		}
+		return new String(header, 0, end, charset);
+	}
+
+	/**
+	 * Reads every row after the header, and hands each one on, in file order,
+	 * encoded with the global dictionaries. Stops at the first line that
+	 * doesn't have one value per column.
+	 * @param dictionaries The global dictionary of each column, added to as values are found.
+	 * @param rows Receives every row.
+	 * @return True if every line was read, false if a malformed line stopped the load.
+	 * @throws IOException If the file can't be read.
+	 */
+	public boolean load(ValueDictionary[] dictionaries, RowSink rows) throws IOException {
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		ArrayDeque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+		try {
+			long start = dataStart;
+			while (start < length) {
+				long end = lineStartAfter(Math.min(length, start + CHUNK_BYTES) - 1);
+				pending.add(workers.submit(new ChunkTask(start, end, dictionaries.length)));
+				start = end;
+				if (pending.size() >= 2 * threads && !merge(pending.poll(), dictionaries, rows)) {
+					return false;
+				}
+			}
+			while (!pending.isEmpty()) {
+				if (!merge(pending.poll(), dictionaries, rows)) {
+					return false;
+				}
+			}
+			return true;
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return The line that stopped the last load, or null if there was none.
+	 */
+	public String getBadLine() {
+		return badLine;
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private boolean merge(Future<Chunk> future, ValueDictionary[] dictionaries, RowSink rows) throws IOException {
+		Chunk chunk;
+		try {
+			chunk = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("A worker failed while loading.", e.getCause());
+		}
+		int columns = dictionaries.length;
+		int[][] globalCode = new int[columns][];
+		for (int i = 0; i < columns; i++) {
+			ValueDictionary local = chunk.dictionaries[i];
+			globalCode[i] = new int[local.size()];
+			for (int code = 0; code < globalCode[i].length; code++) {
+				globalCode[i][code] = dictionaries[i].encode(local.valueOf(code));
+			}
+		}
+		for (int r = 0, base = 0; r < chunk.rows; r++, base += columns) {
+			int[] row = new int[columns];
+			for (int i = 0; i < columns; i++) {
+				row[i] = globalCode[i][chunk.codes[base + i]];
+			}
+			rows.add(row);
+		}
+		if (chunk.badLine != null) {
+			badLine = chunk.badLine;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param position A position in the file.
+	 * @return Where the first line starting after that position starts, or the length of the file.
+	 */
+	private long lineStartAfter(long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		while (position < length) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return length;
+	}
+
+	private void readFully(byte[] bytes, long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("The data file ended early.");
+			}
+		}
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\f';
+	}
+
+	/**
+	 * Reads and encodes one range of lines.
+	 */
+	private class ChunkTask implements Callable<Chunk> {
+		private final long start;
+		private final long end;
+		private final int columns;
+
+		ChunkTask(long start, long end, int columns) {
+			this.start = start;
+			this.end = end;
+			this.columns = columns;
+		}
+
+		public Chunk call() throws IOException {
+			byte[] bytes = new byte[(int) (end - start)];
+			readFully(bytes, start);
+			Chunk chunk = new Chunk(columns);
+			int position = 0;
+			while (position < bytes.length) {
+				int lineEnd = position;
+				while (lineEnd < bytes.length && bytes[lineEnd] != '\n') {
+					lineEnd++;
+				}
+				// Count first, so a malformed line adds nothing to the dictionaries.
+				int tokens = 0;
+				for (int i = position; i < lineEnd; i++) {
+					if (!isSpace(bytes[i]) && (i == position || isSpace(bytes[i - 1]))) {
+						tokens++;
+					}
+				}
+				if (tokens != columns) {
+					int last = lineEnd;
+					if (last > position && bytes[last - 1] == '\r') {
+						last--;
+					}
+					chunk.badLine = new String(bytes, position, last - position, charset);
+					break;
+				}
+				chunk.ensureRoom();
+				int base = chunk.rows * columns;
+				int i = position;
+				for (int column = 0; column < columns; column++) {
+					while (isSpace(bytes[i])) {
+						i++;
+					}
+					int tokenStart = i;
+					while (i < lineEnd && !isSpace(bytes[i])) {
+						i++;
+					}
+					chunk.codes[base + column] = chunk.dictionaries[column].encode(
+							new String(bytes, tokenStart, i - tokenStart, charset));
+				}
+				chunk.rows++;
+				position = lineEnd + 1;
+			}
+			return chunk;
+		}
+	}
+
+	/**
+	 * The rows of one range, encoded with the range's own dictionaries.
+	 */
+	private static class Chunk {
+		final ValueDictionary[] dictionaries;
+		int[] codes;
+		int rows;
+		String badLine;
+
+		Chunk(int columns) {
+			dictionaries = new ValueDictionary[columns];
+			for (int i = 0; i < columns; i++) {
+				dictionaries[i] = new ValueDictionary();
+			}
+			codes = new int[columns * 1024];
+		}
+
+		void ensureRoom() {
+			int columns = dictionaries.length;
+			if ((rows + 1) * columns > codes.length) {
+				codes = Arrays.copyOf(codes, codes.length * 2);
+			}
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package common;
+
+/**
+ * A trained decision tree frozen into flat arrays, for fast prediction.
+ * Nodes are numbered breadth-first from the root (node 0). For node n:
+ * <ul>
+ * <li>splitColumn[n] is the column it splits on, or -1 for a leaf;</li>
+ * <li>the children are childTable[childBase[n] + code] for every value code
+ * below childCount[n], or -1 where the split has no child for that value;</li>
+ * <li>nodeClass[n] is the class code predicted at a leaf, and the fallback
+ * when a row's value was never seen at that split. -1 if there is none.</li>
+ * </ul>
+ * A compiled tree is never modified, so any number of threads may use it at once.
+ */
+public class CompiledTree {
+
+	final int[] splitColumn;
+	final int[] childBase;
+	final int[] childCount;
+	final int[] childTable;
+	final int[] nodeClass;
+
+	/**
+	 * Takes the arrays laid out as above. The arrays must not be changed afterwards.
+	 */
+	public CompiledTree(int[] splitColumn, int[] childBase, int[] childCount, int[] childTable, int[] nodeClass) {
+		this.splitColumn = splitColumn;
+		this.childBase = childBase;
+		this.childCount = childCount;
+		this.childTable = childTable;
+		this.nodeClass = nodeClass;
+	}
+
+	/**
+	 * Classifies one row.
+	 * @param codes The row's value codes, indexed by column. Values never seen in
+	 * training should be -1.
+	 * @return The predicted class code, or -1 if the tree has no class to give.
+	 */
+	public int predict(int[] codes) {
+		int node = 0;
+		int column;
+		while ((column = splitColumn[node]) >= 0) {
+			int code = codes[column];
+			if (code < 0 || code >= childCount[node]) {
+				break;
+			}
+			int child = childTable[childBase[node] + code];
+			if (child < 0) {
+				break;
+			}
+			node = child;
+		}
+		return nodeClass[node];
+	}
+
+	/**
+	 * @return The number of nodes in the tree.
+	 */
+	public int size() {
+		return splitColumn.length;
+	}
+}
@@ -0,0 +1,135 @@
+package common;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A saved model, predicting straight from the memory-mapped file. Only the
+ * column names and the value dictionaries of the split and class columns are
+ * read into the heap; nodes and children are read in place on every
+ * prediction. Safe for any number of threads.
+ */
+public class MappedModel {
+
+	private final ByteBuffer model;
+	private final int numColumns;
+	private final int classColumn;
+	private final int numNodes;
+	private final int childTableOffset;
+	private final String[] columnNames;
+	private final String[][] values;
+	private final List<Map<String, Integer>> codes;
+
+	MappedModel(ByteBuffer model, String fileName) throws IOException {
+		this.model = model;
+		try {
+			if (model.getInt(0) != ModelFile.MAGIC) {
+				throw new IOException(fileName + " is not a saved model.");
+			}
+			int version = model.getInt(4);
+			if (version != ModelFile.VERSION) {
+				throw new IOException(fileName + " has model format version " + version
+						+ ", expected " + ModelFile.VERSION + ".");
+			}
+			numColumns = model.getInt(8);
+			classColumn = model.getInt(12);
+			numNodes = model.getInt(16);
+			int childSlots = model.getInt(20);
+			childTableOffset = ModelFile.HEADER_SIZE + ModelFile.NODE_SIZE * numNodes;
+
+			ByteBuffer strings = model.duplicate();
+			strings.position(childTableOffset + 4 * childSlots);
+			columnNames = new String[numColumns];
+			for (int i = 0; i < numColumns; i++) {
+				columnNames[i] = readString(strings);
+			}
+			values = new String[numColumns][];
+			codes = new ArrayList<Map<String, Integer>>(numColumns);
+			for (int i = 0; i < numColumns; i++) {
+				values[i] = new String[strings.getInt()];
+				Map<String, Integer> columnCodes = new HashMap<String, Integer>();
+				for (int code = 0; code < values[i].length; code++) {
+					values[i][code] = readString(strings);
+					columnCodes.put(values[i][code], code);
+				}
+				codes.add(columnCodes);
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException(fileName + " is cut short.", e);
+		} catch (BufferUnderflowException e) {
+			throw new IOException(fileName + " is cut short.", e);
+		}
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Classifies one encoded row.
+	 * @param codes The row's value codes, indexed by column, -1 for unknown values.
+	 * @return The predicted class code, or -1 if the model has no class to give.
+	 */
+	public int predict(int[] codes) {
+		int node = 0;
+		int column;
+		while ((column = model.getInt(nodeOffset(node))) >= 0) {
+			int code = codes[column];
+			if (code < 0 || code >= model.getInt(nodeOffset(node) + 8)) {
+				break;
+			}
+			int child = model.getInt(childTableOffset + 4 * (model.getInt(nodeOffset(node) + 4) + code));
+			if (child < 0) {
+				break;
+			}
+			node = child;
+		}
+		return model.getInt(nodeOffset(node) + 12);
+	}
+
+	/**
+	 * Classifies one raw row.
+	 * @param row The row's values, indexed by column.
+	 * @return The predicted class, or null if the model has no class to give.
+	 */
+	public String predict(String[] row) {
+		int[] rowCodes = new int[numColumns];
+		for (int i = 0; i < numColumns; i++) {
+			Integer code = codes.get(i).get(row[i]);
+			rowCodes[i] = code == null ? -1 : code;
+		}
+		int predicted = predict(rowCodes);
+		return predicted < 0 ? null : values[classColumn][predicted];
+	}
+
+	private static int nodeOffset(int node) {
+		return ModelFile.HEADER_SIZE + ModelFile.NODE_SIZE * node;
+	}
+
+	public int getClassColumn() {
+		return classColumn;
+	}
+
+	public String getColumnName(int column) {
+		return columnNames[column];
+	}
+
+	public int numColumns() {
+		return numColumns;
+	}
+
+	/**
+	 * @return The number of nodes in the tree.
+	 */
+	public int size() {
+		return numNodes;
+	}
+}
@@ -0,0 +1,132 @@
+package common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The binary format trained models are saved in, so scoring processes can
+ * load a model instead of retraining it. All values are big-endian.
+ * <pre>
+ * int   MAGIC
+ * int   VERSION
+ * int   number of columns
+ * int   class column
+ * int   number of nodes
+ * int   number of child slots
+ * nodes, breadth-first, 4 ints each:
+ *       split column (-1 for a leaf), child base, child count, class code (-1 for none)
+ * child table, one int per slot: child node, or -1
+ * column names, each as an int byte length and UTF-8 bytes
+ * per column: an int value count, then each value as above, in code order
+ * </pre>
+ * Value dictionaries are only stored for the columns the tree splits on and
+ * for the class column; the others are written with a count of 0. The node
+ * and child sections sit at fixed offsets, so a {@link MappedModel} can walk
+ * them in place.
+ */
+public final class ModelFile {
+
+	/**
+	 * "ID3M"
+	 */
+	static final int MAGIC = 0x4944334D;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 6 * 4;
+	static final int NODE_SIZE = 4 * 4;
+
+	private ModelFile() {
+	}
+
+	/**
+	 * Saves a compiled tree together with what is needed to encode raw rows for it.
+	 * @param fileName The file to create, or overwrite.
+	 * @param tree The compiled tree.
+	 * @param columnNames The name of every column.
+	 * @param dictionaries The dictionary of every column.
+	 * @param classColumn The column holding the class.
+	 * @throws IOException If the file can't be written.
+	 */
+	public static void write(String fileName, CompiledTree tree, String[] columnNames,
+			ValueDictionary[] dictionaries, int classColumn) throws IOException {
+		boolean[] keep = new boolean[columnNames.length];
+		keep[classColumn] = true;
+		for (int column : tree.splitColumn) {
+			if (column >= 0) {
+				keep[column] = true;
+			}
+		}
+		int size = HEADER_SIZE + NODE_SIZE * tree.size() + 4 * tree.childTable.length;
+		byte[][] names = new byte[columnNames.length][];
+		byte[][][] values = new byte[columnNames.length][][];
+		for (int i = 0; i < columnNames.length; i++) {
+			names[i] = columnNames[i].getBytes(StandardCharsets.UTF_8);
+			size += 4 + names[i].length + 4;
+			values[i] = new byte[keep[i] ? dictionaries[i].size() : 0][];
+			for (int code = 0; code < values[i].length; code++) {
+				values[i][code] = dictionaries[i].valueOf(code).getBytes(StandardCharsets.UTF_8);
+				size += 4 + values[i][code].length;
+			}
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(columnNames.length);
+		buffer.putInt(classColumn);
+		buffer.putInt(tree.size());
+		buffer.putInt(tree.childTable.length);
+		for (int n = 0; n < tree.size(); n++) {
+			buffer.putInt(tree.splitColumn[n]);
+			buffer.putInt(tree.childBase[n]);
+			buffer.putInt(tree.childCount[n]);
+			buffer.putInt(tree.nodeClass[n]);
+		}
+		for (int child : tree.childTable) {
+			buffer.putInt(child);
+		}
+		for (byte[] name : names) {
+			buffer.putInt(name.length);
+			buffer.put(name);
+		}
+		for (byte[][] columnValues : values) {
+			buffer.putInt(columnValues.length);
+			for (byte[] value : columnValues) {
+				buffer.putInt(value.length);
+				buffer.put(value);
+			}
+		}
+		buffer.flip();
+
+		FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Memory-maps a saved model.
+	 * @param fileName A file written by {@link #write}.
+	 * @return The model, ready to predict.
+	 * @throws IOException If the file can't be read, or is not a model this version understands.
+	 */
+	public static MappedModel load(String fileName) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		try {
+			if (channel.size() < HEADER_SIZE) {
+				throw new IOException(fileName + " is too short to be a model.");
+			}
+			return new MappedModel(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), fileName);
+		} finally {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package common;
+
+import java.io.IOException;
+
+/**
+ * Receives the prediction made for every row of a batch, in the order the
+ * rows appear in the input. Only one thread calls a sink at a time.
+ */
+public interface PredictionSink {
+
+	/**
+	 * @param row The number of the row, counting the first data row as 0.
+	 * @param predictedClass The class predicted for that row, or null if the
+	 * tree had no class to give.
+	 * @throws IOException If the prediction can't be stored.
+	 */
+	void accept(long row, String predictedClass) throws IOException;
+}
@@ -0,0 +1,310 @@
+package common;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+/**
+ * Generates large training sets that look like a small seed file, such as
+ * resources/simple_mushroom.txt, so paging, memory and throughput can be
+ * tested at production scale.
+ *
+ * The generator learns the class distribution and, for every column, the
+ * distribution of its values within each class. Each generated row draws a
+ * class, then copies a random seed row of that class column by column; with
+ * probability noise a value is instead drawn from the column's distribution
+ * for that class. This keeps the structure between columns that a decision
+ * tree picks up, while still producing new rows.
+ *
+ * The number of columns and their cardinality can be raised beyond the seed's.
+ * Extra columns repeat the seed's columns, each repeat copying from its own
+ * seed row. A cardinality scale of k turns every value v into k variants
+ * (v, v~1, ..., v~k-1), picked uniformly. The same random seed always gives
+ * the same output.
+ */
+public class SyntheticDataGenerator {
+
+	private final String[] columnNames;
+	private final int classColumn;
+	private final ValueDictionary[] dictionaries;
+
+	/**
+	 * Seed rows of each class, as value codes: rowsByClass[class][row][column].
+	 */
+	private final int[][][] rowsByClass;
+
+	/**
+	 * Running totals of value counts within each class:
+	 * cumulative[column][class][code] is how many rows of that class hold a
+	 * code no greater than this one in that column.
+	 */
+	private final int[][][] cumulative;
+
+	private int featureColumns;
+	private int cardinalityScale = 1;
+	private double noise = 0.1;
+
+	/**
+	 * Learns the distributions of a seed file.
+	 * @param seedFile A data file with a header line, in the usual whitespace format.
+	 * @param classColumn The column holding the class.
+	 * @throws IOException If the file can't be read, or has no rows.
+	 */
+	public SyntheticDataGenerator(String seedFile, int classColumn) throws IOException {
+		this.classColumn = classColumn;
+		BufferedReader bin = new BufferedReader(new InputStreamReader(new FileInputStream(seedFile)));
+		ArrayList<int[]> rows = new ArrayList<int[]>();
+		try {
+			String input = bin.readLine();
+			if (input == null) {
+				throw new IOException("No data found in the seed file: " + seedFile);
+			}
+			StringTokenizer tokenizer = new StringTokenizer(input);
+			columnNames = new String[tokenizer.countTokens()];
+			for (int i = 0; i < columnNames.length; i++) {
+				columnNames[i] = tokenizer.nextToken();
+			}
+			if (classColumn < 0 || classColumn >= columnNames.length || columnNames.length < 2) {
+				throw new IOException("The seed file needs the class column and at least one other column.");
+			}
+			dictionaries = new ValueDictionary[columnNames.length];
+			for (int i = 0; i < columnNames.length; i++) {
+				dictionaries[i] = new ValueDictionary();
+			}
+			while ((input = bin.readLine()) != null) {
+				tokenizer = new StringTokenizer(input);
+				if (tokenizer.countTokens() != columnNames.length) {
+					continue;
+				}
+				int[] row = new int[columnNames.length];
+				for (int i = 0; i < row.length; i++) {
+					row[i] = dictionaries[i].encode(tokenizer.nextToken());
+				}
+				rows.add(row);
+			}
+		} finally {
+			bin.close();
+		}
+		if (rows.isEmpty()) {
+			throw new IOException("No rows found in the seed file: " + seedFile);
+		}
+
+		int classes = dictionaries[classColumn].size();
+		int[] classSizes = new int[classes];
+		for (int[] row : rows) {
+			classSizes[row[classColumn]]++;
+		}
+		rowsByClass = new int[classes][][];
+		for (int c = 0; c < classes; c++) {
+			rowsByClass[c] = new int[classSizes[c]][];
+		}
+		int[] filled = new int[classes];
+		cumulative = new int[columnNames.length][classes][];
+		for (int i = 0; i < columnNames.length; i++) {
+			for (int c = 0; c < classes; c++) {
+				cumulative[i][c] = new int[dictionaries[i].size()];
+			}
+		}
+		for (int[] row : rows) {
+			int c = row[classColumn];
+			rowsByClass[c][filled[c]++] = row;
+			for (int i = 0; i < row.length; i++) {
+				cumulative[i][c][row[i]]++;
+			}
+		}
+		for (int i = 0; i < columnNames.length; i++) {
+			for (int c = 0; c < classes; c++) {
+				for (int code = 1; code < cumulative[i][c].length; code++) {
+					cumulative[i][c][code] += cumulative[i][c][code - 1];
+				}
+			}
+		}
+		featureColumns = columnNames.length - 1;
+	}
+
+	/**
+	 * @param columns The number of columns to generate, including the class. At least 2.
+	 */
+	public void setColumns(int columns) {
+		if (columns < 2) {
+			throw new IllegalArgumentException("Need at least one column besides the class.");
+		}
+		featureColumns = columns - 1;
+	}
+
+	/**
+	 * @param scale How many variants to make of every non-class value. At least 1.
+	 */
+	public void setCardinalityScale(int scale) {
+		if (scale < 1) {
+			throw new IllegalArgumentException("The cardinality scale must be at least 1.");
+		}
+		cardinalityScale = scale;
+	}
+
+	/**
+	 * @param noise The chance, per value, of drawing from the class distribution
+	 * instead of copying the template seed row. Between 0 and 1.
+	 */
+	public void setNoise(double noise) {
+		if (noise < 0 || noise > 1) {
+			throw new IllegalArgumentException("The noise must be between 0 and 1.");
+		}
+		this.noise = noise;
+	}
+
+	/**
+	 * @return Where the class column goes in the output: its seed position if
+	 * that still fits, otherwise last.
+	 */
+	public int getOutputClassColumn() {
+		return Math.min(classColumn, featureColumns);
+	}
+
+	/**
+	 * Streams out a header line and then the requested number of rows.
+	 * @param out Where to write. The caller closes it.
+	 * @param rows The number of rows to generate.
+	 * @param seed The random seed.
+	 * @throws IOException If writing fails.
+	 */
+	public void generate(Writer out, long rows, long seed) throws IOException {
+		Random random = new Random(seed);
+		int seedFeatures = columnNames.length - 1;
+		int outputClassColumn = getOutputClassColumn();
+
+		// The seed column behind every output feature, and which repeat of it this is.
+		int[] source = new int[featureColumns];
+		int[] repeat = new int[featureColumns];
+		for (int f = 0; f < featureColumns; f++) {
+			int seedFeature = f % seedFeatures;
+			source[f] = seedFeature < classColumn ? seedFeature : seedFeature + 1;
+			repeat[f] = f / seedFeatures;
+		}
+		int repeats = (featureColumns + seedFeatures - 1) / seedFeatures;
+
+		// Every token that can be written, built once.
+		String[][][] tokens = new String[columnNames.length][][];
+		for (int i = 0; i < columnNames.length; i++) {
+			int variants = i == classColumn ? 1 : cardinalityScale;
+			tokens[i] = new String[dictionaries[i].size()][variants];
+			for (int code = 0; code < dictionaries[i].size(); code++) {
+				for (int v = 0; v < variants; v++) {
+					tokens[i][code][v] = v == 0 ? dictionaries[i].valueOf(code)
+							: dictionaries[i].valueOf(code) + "~" + v;
+				}
+			}
+		}
+
+		StringBuilder line = new StringBuilder();
+		for (int f = 0, column = 0; column <= featureColumns; column++) {
+			if (column == outputClassColumn) {
+				line.append(columnNames[classColumn]);
+			} else {
+				line.append(columnNames[source[f]]);
+				if (repeat[f] > 0) {
+					line.append('_').append(repeat[f] + 1);
+				}
+				f++;
+			}
+			line.append(column == featureColumns ? '\n' : ' ');
+		}
+		out.write(line.toString());
+
+		int[] classTotals = new int[rowsByClass.length];
+		int totalRows = 0;
+		for (int c = 0; c < rowsByClass.length; c++) {
+			classTotals[c] = rowsByClass[c].length;
+			totalRows += classTotals[c];
+		}
+		int[][] templates = new int[repeats][];
+		for (long r = 0; r < rows; r++) {
+			int c = drawClass(random, classTotals, totalRows);
+			for (int k = 0; k < repeats; k++) {
+				templates[k] = rowsByClass[c][random.nextInt(rowsByClass[c].length)];
+			}
+			line.setLength(0);
+			for (int f = 0, column = 0; column <= featureColumns; column++) {
+				if (column == outputClassColumn) {
+					line.append(tokens[classColumn][c][0]);
+				} else {
+					int seedColumn = source[f];
+					int code = random.nextDouble() < noise ? drawValue(random, cumulative[seedColumn][c])
+							: templates[repeat[f]][seedColumn];
+					int variant = cardinalityScale == 1 ? 0 : random.nextInt(cardinalityScale);
+					line.append(tokens[seedColumn][code][variant]);
+					f++;
+				}
+				line.append(column == featureColumns ? '\n' : ' ');
+			}
+			out.append(line);
+		}
+	}
+
+	private static int drawClass(Random random, int[] classTotals, int totalRows) {
+		int pick = random.nextInt(totalRows);
+		int c = 0;
+		while (pick >= classTotals[c]) {
+			pick -= classTotals[c];
+			c++;
+		}
+		return c;
+	}
+
+	/**
+	 * Draws a code in proportion to its count, by binary search over the running totals.
+	 */
+	private static int drawValue(Random random, int[] cumulativeCounts) {
+		int pick = random.nextInt(cumulativeCounts[cumulativeCounts.length - 1]);
+		int low = 0;
+		int high = cumulativeCounts.length - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (cumulativeCounts[middle] > pick) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return low;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 4) {
+			System.out.println("Usage: SyntheticDataGenerator <seed file> <class column> <rows> <output file>"
+					+ " [columns] [cardinality scale] [random seed] [noise]");
+			return;
+		}
+		SyntheticDataGenerator generator = new SyntheticDataGenerator(args[0], Integer.parseInt(args[1]));
+		if (args.length > 4) {
+			generator.setColumns(Integer.parseInt(args[4]));
+		}
+		if (args.length > 5) {
+			generator.setCardinalityScale(Integer.parseInt(args[5]));
+		}
+		long seed = args.length > 6 ? Long.parseLong(args[6]) : 1L;
+		if (args.length > 7) {
+			generator.setNoise(Double.parseDouble(args[7]));
+		}
+		long rows = Long.parseLong(args[2]);
+
+		long start = System.nanoTime();
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[3]), "UTF-8"), 1 << 16);
+		try {
+			generator.generate(out, rows, seed);
+		} finally {
+			out.close();
+		}
+		System.out.println("Wrote " + rows + " rows to " + args[3] + " in "
+				+ (System.nanoTime() - start) / 1000000 + " ms. The class is column "
+				+ generator.getOutputClassColumn() + ".");
+	}
+}
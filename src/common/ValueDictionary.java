@@ -0,0 +1,56 @@
+package common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Maps every distinct value seen in one column to a small integer code, and back.
+ * Codes are handed out in the order values are first seen, starting at 0, so they
+ * can be used directly as array indexes.
+ */
+public class ValueDictionary {
+
+	private final HashMap<String, Integer> codes = new HashMap<String, Integer>();
+	private final ArrayList<String> values = new ArrayList<String>();
+
+	/**
+	 * Finds the code for a value, adding the value to the dictionary if it
+	 * has not been seen before.
+	 * @param value The value to encode.
+	 * @return The code for that value.
+	 */
+	public int encode(String value) {
+		Integer code = codes.get(value);
+		if (code == null) {
+			code = values.size();
+			codes.put(value, code);
+			values.add(value);
+		}
+		return code;
+	}
+
+	/**
+	 * Looks up the code for a value without changing the dictionary.
+	 * @param value The value to look up.
+	 * @return The code for that value, or -1 if it was never seen.
+	 */
+	public int codeOf(String value) {
+		Integer code = codes.get(value);
+		return code == null ? -1 : code;
+	}
+
+	/**
+	 * @param code A code handed out by this dictionary.
+	 * @return The value that the code stands for.
+	 */
+	public String valueOf(int code) {
+		return values.get(code);
+	}
+
+	/**
+	 * @return The number of distinct values in this column.
+	 */
+	public int size() {
+		return values.size();
+	}
+}
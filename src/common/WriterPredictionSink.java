@@ -0,0 +1,25 @@
+package common;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes each prediction on its own line. Rows with no prediction are
+ * written as "?".
+ */
+public class WriterPredictionSink implements PredictionSink {
+
+	private final Writer out;
+
+	/**
+	 * @param out Where to write the predictions. The caller closes it.
+	 */
+	public WriterPredictionSink(Writer out) {
+		this.out = out;
+	}
+
+	public void accept(long row, String predictedClass) throws IOException {
+		out.write(predictedClass == null ? "?" : predictedClass);
+		out.write('\n');
+	}
+}
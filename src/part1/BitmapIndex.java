@@ -0,0 +1,89 @@
+package part1;
+
+/**
+ * One {@link RowBitmap} for every value of every column of a {@link Dataset},
+ * holding the rows with that value. The class column's bitmaps give the rows
+ * of each class. With the index, counting the rows of a set that hold a value
+ * is an intersection count of two bitmaps rather than a scan of the set.
+ */
+public class BitmapIndex {
+
+	private final RowBitmap[][] bitmaps;
+	private final RowBitmap allRows;
+
+	/**
+	 * Indexes every row of a dataset, in one pass over each column.
+	 * @param dataset The dataset, fully loaded.
+	 */
+	public BitmapIndex(Dataset dataset) {
+		bitmaps = new RowBitmap[dataset.numColumns()][];
+		for (int column = 0; column < bitmaps.length; column++) {
+			bitmaps[column] = new RowBitmap[dataset.getDictionary(column).size()];
+			for (int code = 0; code < bitmaps[column].length; code++) {
+				bitmaps[column][code] = new RowBitmap();
+			}
+			for (int row = 0; row < dataset.numRows(); row++) {
+				bitmaps[column][dataset.getCode(row, column)].add(row);
+			}
+			for (RowBitmap bitmap : bitmaps[column]) {
+				bitmap.trimToSize();
+			}
+		}
+		allRows = new RowBitmap();
+		for (int row = 0; row < dataset.numRows(); row++) {
+			allRows.add(row);
+		}
+		allRows.trimToSize();
+	}
+
+	/**
+	 * @param column The column number.
+	 * @param code A code in that column's dictionary.
+	 * @return The rows holding that value in that column.
+	 */
+	public RowBitmap get(int column, int code) {
+		return bitmaps[column][code];
+	}
+
+	/**
+	 * @return Every row of the dataset.
+	 */
+	public RowBitmap allRows() {
+		return allRows;
+	}
+
+	/**
+	 * @param members A set of rows.
+	 * @param column A column number.
+	 * @return How many of the rows hold each value of the column, indexed by code.
+	 */
+	public int[] countValues(RowBitmap members, int column) {
+		int[] counts = new int[bitmaps[column].length];
+		for (int code = 0; code < counts.length; code++) {
+			counts[code] = members.andCardinality(bitmaps[column][code]);
+		}
+		return counts;
+	}
+
+	/**
+	 * Counts value-by-class for a single column, with the same layout as
+	 * {@link DecisionTree#countColumnByClass(int, int, int)}.
+	 * @param members The rows to count.
+	 * @param positives The rows among them with the positive class.
+	 * @param negatives The rows among them with the negative class.
+	 * @param column The column to count.
+	 * @return { positives, negatives, total }, indexed by value code.
+	 */
+	public int[][] countColumnByClass(RowBitmap members, RowBitmap positives, RowBitmap negatives, int column) {
+		int[][] counts = new int[bitmaps[column].length][3];
+		for (int code = 0; code < counts.length; code++) {
+			RowBitmap values = bitmaps[column][code];
+			counts[code][2] = members.andCardinality(values);
+			if (counts[code][2] > 0) {
+				counts[code][0] = positives.andCardinality(values);
+				counts[code][1] = negatives.andCardinality(values);
+			}
+		}
+		return counts;
+	}
+}
@@ -0,0 +1,254 @@
+package part1;
+
+import java.util.Arrays;
+
+import common.ValueDictionary;
+
+/**
+ * A column-oriented store for a training set. Every column is dictionary-encoded:
+ * each value is replaced by its code in that column's {@link ValueDictionary}, and
+ * the codes are kept in a primitive array that is only as wide as the column's
+ * cardinality needs (a byte for up to 256 values, a short for up to 65,536,
+ * otherwise an int). Rows are referred to by their index.
+ */
+public class Dataset {
+
+	private final String[] columnNames;
+	private final ValueDictionary[] dictionaries;
+	private final Column[] columns;
+	private int numRows;
+	// Reused by addRow.
+	private final int[] rowCodes;
+
+	/**
+	 * Makes an empty dataset.
+	 * @param columnNames The names of the columns, from left to right.
+	 */
+	public Dataset(String[] columnNames) {
+		this.columnNames = columnNames;
+		dictionaries = new ValueDictionary[columnNames.length];
+		columns = new Column[columnNames.length];
+		rowCodes = new int[columnNames.length];
+		for (int i = 0; i < columnNames.length; i++) {
+			dictionaries[i] = new ValueDictionary();
+			columns[i] = new ByteColumn(16);
+		}
+	}
+
+	/**
+	 * Encodes and appends a row. The array is not kept, so callers may reuse it.
+	 * @param values One value per column.
+	 */
+	public void addRow(String[] values) {
+		for (int i = 0; i < columns.length; i++) {
+			rowCodes[i] = dictionaries[i].encode(values[i]);
+		}
+		addCodes(rowCodes);
+	}
+
+	/**
+	 * Appends a row that is already encoded with this dataset's dictionaries.
+	 * The array is not kept, so callers may reuse it.
+	 * @param codes One code per column.
+	 */
+	public void addCodes(int[] codes) {
+		for (int i = 0; i < columns.length; i++) {
+			int code = codes[i];
+			if (code > columns[i].maxCode()) {
+				columns[i] = columns[i].widen();
+			}
+			columns[i].set(numRows, code);
+		}
+		numRows++;
+	}
+
+	/**
+	 * Releases the spare capacity left over from loading.
+	 */
+	public void trimToSize() {
+		for (Column column : columns) {
+			column.resize(numRows);
+		}
+	}
+
+	/**
+	 * @param row The index of the row.
+	 * @param column The column number, counting from 0 at the left.
+	 * @return The code of the value stored in that cell.
+	 */
+	public int getCode(int row, int column) {
+		return columns[column].get(row);
+	}
+
+	/**
+	 * @param row The index of the row.
+	 * @param column The column number, counting from 0 at the left.
+	 * @return The value stored in that cell.
+	 */
+	public String getValue(int row, int column) {
+		return dictionaries[column].valueOf(columns[column].get(row));
+	}
+
+	public ValueDictionary getDictionary(int column) {
+		return dictionaries[column];
+	}
+
+	/**
+	 * @return The dictionary of every column, indexed by column.
+	 */
+	public ValueDictionary[] getDictionaries() {
+		return dictionaries.clone();
+	}
+
+	public String getColumnName(int column) {
+		return columnNames[column];
+	}
+
+	public int numColumns() {
+		return columns.length;
+	}
+
+	public int numRows() {
+		return numRows;
+	}
+
+	/**
+	 * Storage for the codes of one column.
+	 */
+	private static abstract class Column {
+		abstract int get(int row);
+
+		/**
+		 * Stores a code, growing the column if the row is past the end.
+		 */
+		abstract void set(int row, int code);
+
+		abstract int maxCode();
+
+		abstract int capacity();
+
+		abstract void resize(int capacity);
+
+		/**
+		 * @return A copy of this column in the next wider code type.
+		 */
+		abstract Column widen();
+
+		int grownCapacity(int row) {
+			return Math.max(row + 1, capacity() * 2);
+		}
+	}
+
+	private static class ByteColumn extends Column {
+		private byte[] codes;
+
+		ByteColumn(int capacity) {
+			codes = new byte[capacity];
+		}
+
+		int get(int row) {
+			return codes[row] & 0xFF;
+		}
+
+		void set(int row, int code) {
+			if (row >= codes.length) {
+				resize(grownCapacity(row));
+			}
+			codes[row] = (byte) code;
+		}
+
+		int maxCode() {
+			return 0xFF;
+		}
+
+		int capacity() {
+			return codes.length;
+		}
+
+		void resize(int capacity) {
+			codes = Arrays.copyOf(codes, capacity);
+		}
+
+		Column widen() {
+			ShortColumn wider = new ShortColumn(codes.length);
+			for (int i = 0; i < codes.length; i++) {
+				wider.codes[i] = (short) get(i);
+			}
+			return wider;
+		}
+	}
+
+	private static class ShortColumn extends Column {
+		private short[] codes;
+
+		ShortColumn(int capacity) {
+			codes = new short[capacity];
+		}
+
+		int get(int row) {
+			return codes[row] & 0xFFFF;
+		}
+
+		void set(int row, int code) {
+			if (row >= codes.length) {
+				resize(grownCapacity(row));
+			}
+			codes[row] = (short) code;
+		}
+
+		int maxCode() {
+			return 0xFFFF;
+		}
+
+		int capacity() {
+			return codes.length;
+		}
+
+		void resize(int capacity) {
+			codes = Arrays.copyOf(codes, capacity);
+		}
+
+		Column widen() {
+			IntColumn wider = new IntColumn(codes.length);
+			for (int i = 0; i < codes.length; i++) {
+				wider.codes[i] = get(i);
+			}
+			return wider;
+		}
+	}
+
+	private static class IntColumn extends Column {
+		private int[] codes;
+
+		IntColumn(int capacity) {
+			codes = new int[capacity];
+		}
+
+		int get(int row) {
+			return codes[row];
+		}
+
+		void set(int row, int code) {
+			if (row >= codes.length) {
+				resize(grownCapacity(row));
+			}
+			codes[row] = code;
+		}
+
+		int maxCode() {
+			return Integer.MAX_VALUE;
+		}
+
+		int capacity() {
+			return codes.length;
+		}
+
+		void resize(int capacity) {
+			codes = Arrays.copyOf(codes, capacity);
+		}
+
+		Column widen() {
+			return this;
+		}
+	}
+}
@@ -2,14 +2,44 @@ package part1;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import common.BatchClassifier;
+import common.ChunkedLoader;
+import common.CompiledTree;
+import common.ModelFile;
+import common.PredictionSink;
+import common.ValueDictionary;
 
 public class DecisionTree {
 	int numAttributes;
-	String[] attributeNames;
 	private final int classColumn;
 	private final String positiveClassValue;
 	private final String negativeClassValue;
-	ArrayList<ArrayList<String>> attributes;
+	// Codes of the class values in the class column's dictionary, -1 if never seen.
+	private int positiveClassCode = -1;
+	private int negativeClassCode = -1;
+	// The training set, shared by training, printing and classifying.
+	Dataset dataset;
+	// Indexes of every training row. Splitting a node reorders its range in
+	// place, so that each child's rows sit together in a range of their own.
+	int[] rows;
+	// The trained tree, flattened for prediction.
+	CompiledTree compiledTree;
+	// If set, candidate columns are scored concurrently on this pool.
+	private ForkJoinPool splitPool;
+	// If set, sibling subtrees with at least sequentialThreshold rows are built
+	// concurrently on this pool.
+	private ForkJoinPool subtreePool;
+	private int sequentialThreshold;
+	// The number of threads that parse the training file.
+	private int loadThreads = Runtime.getRuntime().availableProcessors();
+	// If set by readData, nodes hold their rows as bitmaps and count them
+	// through this index instead of scanning rows.
+	private boolean useBitmapIndex;
+	BitmapIndex bitmapIndex;
 
 	Node root = new Node();
 
@@ -19,70 +49,175 @@ public class DecisionTree {
 		this.negativeClassValue = negativeClassValue;
 	}
 
-	public ArrayList<String> getAllValuesInColumn(ArrayList<Instance> data, int column) {
+	/**
+	 * Turns on parallel split selection: every candidate column of a node is
+	 * scored as its own task on the given pool. Pass null to go back to the
+	 * sequential single-pass scoring. The chosen split is the same either way.
+	 * @param pool The pool to score columns on, or null.
+	 */
+	public void setSplitPool(ForkJoinPool pool) {
+		splitPool = pool;
+	}
+
+	/**
+	 * Turns on parallel tree construction: once a node is split, its children
+	 * are built as separate tasks on the given pool. Nodes with fewer rows than
+	 * the threshold build their children one after another, since the task
+	 * overhead outweighs the work there. Pass null to build sequentially.
+	 * @param pool The pool to build subtrees on, or null.
+	 * @param sequentialThreshold The fewest rows a node needs for its children to be built in parallel.
+	 */
+	public void setSubtreePool(ForkJoinPool pool, int sequentialThreshold) {
+		subtreePool = pool;
+		this.sequentialThreshold = sequentialThreshold;
+	}
+
+	/**
+	 * Sets how many threads {@link #readData(String)} parses the file on.
+	 * Defaults to the number of processors. The data read is the same
+	 * whatever the number.
+	 * @param threads The number of threads, at least 1.
+	 */
+	public void setLoadThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Need at least one thread to load with.");
+		}
+		loadThreads = threads;
+	}
+
+	/**
+	 * Turns on the bitmap index, built by the next {@link #readData(String)}.
+	 * Every node then holds its rows as a compressed bitmap, and each count
+	 * behind a split is the size of an intersection of bitmaps rather than a
+	 * scan of the node's rows. This pays off on large sets with many candidate
+	 * columns; on small ones the plain scan is faster. The tree is the same
+	 * either way.
+	 * @param enabled Whether to index the data.
+	 */
+	public void setBitmapIndex(boolean enabled) {
+		useBitmapIndex = enabled;
+	}
+
+	/**
+	 * @param from The first index, in rows, of the rows to examine.
+	 * @param to One past the last index, in rows, of the rows to examine.
+	 * @param column The column to read.
+	 * @return Every value found in that column for those rows, without duplicates.
+	 */
+	public ArrayList<String> getAllValuesInColumn(int from, int to, int column) {
 		ArrayList<String> values = new ArrayList<String>();
-		for (Instance instance : data) {
-			String value = instance.getAttributeInColumn(column);
-			int index = values.indexOf(value);
-			if (index < 0) {
-				values.add(value);
+		boolean[] seen = new boolean[dataset.getDictionary(column).size()];
+		for (int i = from; i < to; i++) {
+			int code = dataset.getCode(rows[i], column);
+			if (!seen[code]) {
+				seen[code] = true;
+				values.add(dataset.getDictionary(column).valueOf(code));
 			}
 		}
 		return values;
 	}
 
 
-	public String majorityClass(ArrayList<Instance> data) {
-		HashMap<String, Integer> tracker = new HashMap<String, Integer>();
-		String majorityClass = "";
-
-		for (Instance instance : data) {
-			String value = instance.getAttributeInColumn(classColumn);
-			if (tracker.containsKey(value)) {
-				tracker.put(value, tracker.get(value) + 1);
-			} else {
-				tracker.put(value, 0);
-			}
-		}
+	public String majorityClass(Node node) {
+		int majorityClass = majorityClassCode(node);
+		return majorityClass < 0 ? "" : dataset.getDictionary(classColumn).valueOf(majorityClass);
+	}
 
+	/**
+	 * @param node The node to examine.
+	 * @return The code of the most common class among the node's rows, or -1 if it has none.
+	 */
+	public int majorityClassCode(Node node) {
+		int majorityClass = -1;
 		int max = 0;
-		for (String key : tracker.keySet()) {
-			int occurrencesOfThisClass = tracker.get(key);
+		for (int code = 0; code < node.classCounts.length; code++) {
+			int occurrencesOfThisClass = node.classCounts[code];
 			if (occurrencesOfThisClass > max) {
-				majorityClass = key;
+				majorityClass = code;
 				max = occurrencesOfThisClass;
 			}
 		}
 		return majorityClass;
 	}
 
+	/**
+	 * @param from The first index, in rows, of the rows to count.
+	 * @param to One past the last index, in rows, of the rows to count.
+	 * @return How many of those rows hold each class, indexed by class code.
+	 */
+	public int[] countClasses(int from, int to) {
+		int[] counts = new int[dataset.getDictionary(classColumn).size()];
+		for (int i = from; i < to; i++) {
+			counts[dataset.getCode(rows[i], classColumn)]++;
+		}
+		return counts;
+	}
 
-	public ArrayList<Instance> getSubset(ArrayList<Instance> data, int column, String value) {
-		ArrayList<Instance> subset = new ArrayList<Instance>();
+	/**
+	 * Reorders a range of rows in place so that the rows of each value of a
+	 * column sit together, in code order, in the manner of one pass of an
+	 * American flag sort: one pass counts the values, a second swaps every
+	 * row straight into its value's bucket.
+	 * @param from The first index, in rows, of the range.
+	 * @param to One past the last index, in rows, of the range.
+	 * @param column The column to group the rows by.
+	 * @return Where each value's rows start, indexed by code, followed by to.
+	 */
+	public int[] partitionRows(int from, int to, int column) {
+		int numValues = dataset.getDictionary(column).size();
+		int[] start = new int[numValues + 1];
+		for (int i = from; i < to; i++) {
+			start[dataset.getCode(rows[i], column) + 1]++;
+		}
+		start[0] = from;
+		for (int code = 0; code < numValues; code++) {
+			start[code + 1] += start[code];
+		}
 
-		for (Instance instance : data) {
-			if (instance.getAttributeInColumn(column).equals(value)) {
-				subset.add(instance);
+		// next[code] is the first slot of the bucket not yet known to hold that code.
+		int[] next = Arrays.copyOf(start, numValues);
+		for (int code = 0; code < numValues; code++) {
+			int end = start[code + 1];
+			while (next[code] < end) {
+				int row = rows[next[code]];
+				int rowCode = dataset.getCode(row, column);
+				if (rowCode == code) {
+					next[code]++;
+				} else {
+					rows[next[code]] = rows[next[rowCode]];
+					rows[next[rowCode]++] = row;
+				}
 			}
 		}
-
-		return subset;
+		return start;
 	}
 
-	public double calculateEntropy(ArrayList<Instance> data) {
-		int totalOccurrences = data.size();
+	public double calculateEntropy(Node node) {
+		int totalOccurrences = node.size;
 
 		// Don't calculate entropy if there is no data.
 		if (totalOccurrences == 0) {
 			return 0;
 		}
 
-		// Subset of all positives or negatives from the above parameter subset;
-		// the size is our positive or negative occurrences.
-		int positiveOccurrences = getSubset(data, classColumn, positiveClassValue).size();
-		int negativeOccurrences = getSubset(data, classColumn, negativeClassValue).size();
+		int positiveOccurrences = positiveClassCode < 0 ? 0 : node.classCounts[positiveClassCode];
+		int negativeOccurrences = negativeClassCode < 0 ? 0 : node.classCounts[negativeClassCode];
+
+		double entropy = calculateEntropy(positiveOccurrences, negativeOccurrences, totalOccurrences);
+		System.out.println("Entropy: positive == " + positiveOccurrences + ", negative == "
+				+ negativeOccurrences + ", and entropy is " + entropy);
+		return entropy;
+	}
 
-		// Pure set.
+	/**
+	 * Calculates the entropy of a set of instances from its class counts alone.
+	 * @param positiveOccurrences Instances in the set with the positive class value.
+	 * @param negativeOccurrences Instances in the set with the negative class value.
+	 * @param totalOccurrences Size of the set.
+	 * @return The amount of entropy in that set.
+	 */
+	public double calculateEntropy(int positiveOccurrences, int negativeOccurrences, int totalOccurrences) {
+		// Pure set, or no data at all.
 		if (positiveOccurrences < 1 || negativeOccurrences < 1) {
 			return 0;
 		}
@@ -90,12 +225,110 @@ public class DecisionTree {
 		double positive = (double) positiveOccurrences / totalOccurrences;
 		double negative = (double) negativeOccurrences / totalOccurrences;
 
-		double entropy = -(positive * (Math.log(positive) / Math.log(2))
+		return -(positive * (Math.log(positive) / Math.log(2))
 				+ negative * (Math.log(negative) / Math.log(2)));
+	}
 
-		System.out.println("Entropy: positive == " + positive + ", negative == " + negative + ", and entropy is " + entropy);
-		return entropy;
+	/**
+	 * Builds the contingency table for every candidate column in one scan of the data.
+	 * counts[column][code] holds { positives, negatives, total } for the instances
+	 * whose value in that column has that code.
+	 * Columns that are not candidates are left null.
+	 * @param from The first index, in rows, of the rows to count.
+	 * @param to One past the last index, in rows, of the rows to count.
+	 * @param attributeList The candidate columns.
+	 * @return The value-by-class counts, indexed by column.
+	 */
+	public int[][][] countValuesByClass(int from, int to, List<Integer> attributeList) {
+		int[][][] counts = new int[numAttributes][][];
+		int[] columns = new int[attributeList.size()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = attributeList.get(i);
+			counts[columns[i]] = new int[dataset.getDictionary(columns[i]).size()][3];
+		}
 
+		for (int i = from; i < to; i++) {
+			int row = rows[i];
+			int classCode = dataset.getCode(row, classColumn);
+			int classIndex = classCode == positiveClassCode ? 0
+					: classCode == negativeClassCode ? 1 : -1;
+			for (int column : columns) {
+				int[] valueCounts = counts[column][dataset.getCode(row, column)];
+				if (classIndex >= 0) {
+					valueCounts[classIndex]++;
+				}
+				valueCounts[2]++;
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Counts value-by-class for a single column. Same layout as one column
+	 * of {@link #countValuesByClass(int, int, List)}.
+	 * @param from The first index, in rows, of the rows to count.
+	 * @param to One past the last index, in rows, of the rows to count.
+	 * @param column The column to count.
+	 * @return { positives, negatives, total }, indexed by value code.
+	 */
+	public int[][] countColumnByClass(int from, int to, int column) {
+		int[][] counts = new int[dataset.getDictionary(column).size()][3];
+		for (int i = from; i < to; i++) {
+			int row = rows[i];
+			int classCode = dataset.getCode(row, classColumn);
+			int[] valueCounts = counts[dataset.getCode(row, column)];
+			if (classCode == positiveClassCode) {
+				valueCounts[0]++;
+			} else if (classCode == negativeClassCode) {
+				valueCounts[1]++;
+			}
+			valueCounts[2]++;
+		}
+		return counts;
+	}
+
+	/**
+	 * The entropy left after splitting on a column: the entropy of every child,
+	 * weighted by the child's size.
+	 * @param columnCounts The value-by-class counts of the column.
+	 * @param totalOccurrences Size of the node being split.
+	 * @return The weighted entropy of the children.
+	 */
+	public double calculateSplitEntropy(int[][] columnCounts, int totalOccurrences) {
+		// Loop over all the values of this attribute (all the children that would
+		// be created if this attribute is chosen).
+		double runningEntropy = 0.0;
+		for (int[] valueCounts : columnCounts) {
+			if (valueCounts[2] == 0) {
+				continue;
+			}
+
+			double currentEntropy = calculateEntropy(valueCounts[0], valueCounts[1], valueCounts[2]);
+
+			runningEntropy += valueCounts[2] * currentEntropy;
+		}
+
+		// Gain(S, CurrentColumn) = node entropy - (childOneTotal/total)*childOneEntropy - (childTwoTotal/total)*childTwoEntropy) . . 
+		// Do Gain(S, EachRemainingColumn) until we find the largest result (means greatest drop in entropy)
+		// We did runningEntropy = childOneTotal*childOneEntropy + childTwoTotal*childTwoEntropy. . .etc
+		// Now we divide it all by size of the subset.
+		return runningEntropy / (double) totalOccurrences;
+	}
+
+	/**
+	 * Copies an attribute list, leaving out one attribute.
+	 * @param attributeList The attributes to copy.
+	 * @param attribute The attribute to leave out.
+	 * @return A read-only list of the remaining attributes, in the same order.
+	 */
+	static List<Integer> withoutAttribute(List<Integer> attributeList, int attribute) {
+		ArrayList<Integer> remaining = new ArrayList<Integer>(attributeList.size() - 1);
+		for (int column : attributeList) {
+			if (column != attribute) {
+				remaining.add(column);
+			}
+		}
+		return Collections.unmodifiableList(remaining);
 	}
 
 	/**
@@ -103,7 +336,7 @@ public class DecisionTree {
 	 * @param node The parent node to split if it is not meant to be a leaf.
 	 * @param attributeList Remaining attribute columns that have not yet been split.
 	 */
-	public void splitNode(Node node, ArrayList<Integer> attributeList) {
+	public void splitNode(Node node, List<Integer> attributeList) {
 		// Base case, no attributes left to split.
 		// There will always be at least one attribute left in the list
 		// (the class attribute that we're training for).
@@ -115,7 +348,23 @@ public class DecisionTree {
 		boolean selected = false;
 		int selectedAttribute = -1;
 
-		node.entropy = calculateEntropy(node.data);
+		// Sequentially, one pass over the node's data answers every candidate split below.
+		// In parallel, each column task makes its own pass. With the bitmap index
+		// each column is counted from the node's rows of either class instead.
+		int size = node.size;
+		int[][][] counts = null;
+		RowBitmap positives = null;
+		RowBitmap negatives = null;
+		if (node.members != null) {
+			positives = classMembers(node, positiveClassCode);
+			negatives = classMembers(node, negativeClassCode);
+		} else if (splitPool == null) {
+			counts = countValuesByClass(node.from, node.to, attributeList);
+		}
+		node.entropy = calculateEntropy(
+				positiveClassCode < 0 ? 0 : node.classCounts[positiveClassCode],
+				negativeClassCode < 0 ? 0 : node.classCounts[negativeClassCode],
+				size);
 
 		// No need to split -- this node has perfect entropy.
 		if (node.entropy == 0.0) {
@@ -123,9 +372,26 @@ public class DecisionTree {
 			return;
 		}
 
+		// Weighted entropy of the children for each candidate, in attributeList order.
+		double[] splitEntropies = new double[attributeList.size()];
+		if (splitPool == null) {
+			for (int i = 0; i < attributeList.size(); i++) {
+				int currentColumn = attributeList.get(i);
+				if (classColumn != currentColumn) {
+					splitEntropies[i] = calculateSplitEntropy(counts != null ? counts[currentColumn]
+							: bitmapIndex.countColumnByClass(node.members, positives, negatives, currentColumn), size);
+				}
+			}
+		} else {
+			splitPool.invoke(new ColumnScoringTask(node, positives, negatives, attributeList, splitEntropies,
+					0, attributeList.size()));
+		}
+
 		// Need to make children.
 		// Find the maximum decrease in entropy.
 		// Loop over all the different attributes, skipping the class attribute.
+		// Only a strictly lower entropy replaces the pick, so ties go to the
+		// earliest column in the list whether or not it was scored in parallel.
 		for (int i = 0; i < attributeList.size(); i++) {
 			int currentColumn = attributeList.get(i);
 			if (classColumn == currentColumn) {
@@ -133,36 +399,16 @@ public class DecisionTree {
 			}
 			System.out.println("Calculating entropy for column " + currentColumn + ".");
 
-			int potentialColumnValues = attributes.get(currentColumn).size();
+			ValueDictionary columnValues = dataset.getDictionary(currentColumn);
+			int potentialColumnValues = columnValues.size();
 
 			System.out.println("There are " + potentialColumnValues + " values for this column: ");
 
-			for (String value : attributes.get(currentColumn)) {
-				System.out.println(value);
-			}
-			// Loop over all the values of this attribute (all the children that would
-			// be created if this attribute is chosen).
-			double runningEntropy = 0.0;
-			for (String currentValue : attributes.get(currentColumn)) {
-
-				ArrayList<Instance> subsetForCurrentColumnAndValue =
-						getSubset(node.data, currentColumn, currentValue);
-
-				if (subsetForCurrentColumnAndValue.isEmpty()) {
-					continue;
-				}
-
-				double currentEntropy = calculateEntropy(subsetForCurrentColumnAndValue);
-
-				runningEntropy += subsetForCurrentColumnAndValue.size() * currentEntropy;
+			for (int code = 0; code < potentialColumnValues; code++) {
+				System.out.println(columnValues.valueOf(code));
 			}
 
-			// Gain(S, CurrentColumn) = node entropy - (childOneTotal/total)*childOneEntropy - (childTwoTotal/total)*childTwoEntropy) . . 
-			// Do Gain(S, EachRemainingColumn) until we find the largest result (means greatest drop in entropy)
-			// We did runningEntropy = childOneTotal*childOneEntropy + childTwoTotal*childTwoEntropy. . .etc
-			// Now we divide it all by size of the subset.
-
-			runningEntropy = runningEntropy / (double) node.data.size();
+			double runningEntropy = splitEntropies[i];
 			if (!selected) {
 				selected = true;
 				bestEntropy = runningEntropy;
@@ -183,25 +429,53 @@ public class DecisionTree {
 		}
 
 		// Now divide the dataset using the selected attribute.
-		int numValues = attributes.get(selectedAttribute).size();
+		// Child j holds the rows whose value has code j, in its own part of
+		// the node's range, or as its own bitmap with the index.
+		int numValues = dataset.getDictionary(selectedAttribute).size();
 		node.splitAttribute = selectedAttribute;
 		node.children = new Node[numValues];
+		if (node.members != null) {
+			for (int j = 0; j < numValues; j++) {
+				RowBitmap members = node.members.and(bitmapIndex.get(selectedAttribute, j));
+				node.children[j] = new Node(members, bitmapIndex.countValues(members, classColumn));
+			}
+		} else {
+			int[] start = partitionRows(node.from, node.to, selectedAttribute);
+			for (int j = 0; j < numValues; j++) {
+				node.children[j] = new Node(start[j], start[j + 1], countClasses(start[j], start[j + 1]));
+			}
+		}
 		for (int j = 0; j < numValues; j++) {
-			node.children[j] = new Node();
 			node.children[j].parent = node;
-			String thisValue = attributes.get(selectedAttribute).get(j);
-			node.children[j].data = getSubset(node.data, selectedAttribute, thisValue);
-			node.children[j].splitValue = thisValue;
+			node.children[j].splitValue = j;
 		}
 
 		// Recursively divide children nodes.
-		// First, remove the attribute from the attribute list.
-		attributeList.remove(new Integer(selectedAttribute));
-		for (int j = 0; j < numValues; j++) {
-			splitNode(node.children[j], attributeList);
+		// Each child gets its own copy of the attribute list, without the attribute
+		// used here, so siblings never see each other's splits.
+		List<Integer> childAttributes = withoutAttribute(attributeList, selectedAttribute);
+		if (subtreePool != null && ForkJoinTask.inForkJoinPool() && size >= sequentialThreshold) {
+			SubtreeTask[] subtrees = new SubtreeTask[numValues];
+			for (int j = 0; j < numValues; j++) {
+				subtrees[j] = new SubtreeTask(node.children[j], childAttributes);
+			}
+			ForkJoinTask.invokeAll(subtrees);
+		} else {
+			for (int j = 0; j < numValues; j++) {
+				splitNode(node.children[j], childAttributes);
+			}
 		}
 	}
 
+	/**
+	 * @param node A node whose rows are held as a bitmap.
+	 * @param classCode A class code, or -1.
+	 * @return The node's rows with that class.
+	 */
+	private RowBitmap classMembers(Node node, int classCode) {
+		return classCode < 0 ? new RowBitmap() : node.members.and(bitmapIndex.get(classColumn, classCode));
+	}
+
 	/* 
     Function to read the data file.
     The first line of the data file should contain the names of 
@@ -212,26 +486,29 @@ public class DecisionTree {
 	 */
 	public int readData(String filename) throws IOException{
 
-		FileInputStream in = null;
+		ChunkedLoader loader = null;
 		try {
-			File inputFile = new File(filename);
-			in = new FileInputStream(inputFile);
+			loader = new ChunkedLoader(filename, loadThreads);
 		} catch ( Exception e) {
 			System.err.println( "Unable to open data file: " + 
 					filename + "\n" + e);
 			return 0;
 		}
+		try {
+			return readData(filename, loader);
+		} finally {
+			loader.close();
+		}
+	}
 
-		BufferedReader bin = new BufferedReader(new InputStreamReader(in));
-
+	private int readData(String filename, ChunkedLoader loader) throws IOException {
 		String input;
 
 		// Read the first line;
-		input = bin.readLine();
+		input = loader.readHeader();
 		if (input == null) {
 			System.err.println( "No data found in the data file: " + 
 					filename + "\n");
-			bin.close();
 			return 0;
 		}
 
@@ -242,48 +519,42 @@ public class DecisionTree {
 			System.err.println("Could not obtain the names of attributes.");
 			System.err.println("Expecting at least one input attribute and " +
 					"one output attribute");
-			bin.close();
 			return 0;
 		}
 
-		attributes = new ArrayList<ArrayList<String>>();
-		for (int i = 0; i < numAttributes; i++) {
-			attributes.add(new ArrayList<String>());
-		}
-		attributeNames = new String[numAttributes];
-
+		String[] attributeNames = new String[numAttributes];
 		for (int i = 0; i < numAttributes; i++) {
 			attributeNames[i]  = tokenizer.nextToken();
 		}
+		dataset = new Dataset(attributeNames);
 
-		while (true) {
-			input = bin.readLine();
-			if (input == null) break;
-
-			tokenizer = new StringTokenizer(input);
-			int numtokens = tokenizer.countTokens();
-			if (numtokens != numAttributes) {
-				System.err.println( "Read " + root.data.size() + " data");
-				System.err.println( "Last line read: " + input);
-				System.err.println( "Expecting " + numAttributes  + " attributes");
-				bin.close();
-				return 0;
+		// Lines are parsed on several threads but added in file order.
+		boolean complete = loader.load(dataset.getDictionaries(), new ChunkedLoader.RowSink() {
+			public void add(int[] row) {
+				dataset.addCodes(row);
 			}
+		});
+		if (!complete) {
+			System.err.println( "Read " + dataset.numRows() + " data");
+			System.err.println( "Last line read: " + loader.getBadLine());
+			System.err.println( "Expecting " + numAttributes  + " attributes");
+			return 0;
+		}
+		dataset.trimToSize();
 
-			Instance point = new Instance(numAttributes);
-			String value;
-			for (int i = 0; i < numAttributes; i++) {
-				value = tokenizer.nextToken(); 
-				point.setAttribute(i, value);
-				int index = attributes.get(i).indexOf(value);
-				if (index < 0) {
-					attributes.get(i).add(value);
-				}
+		if (useBitmapIndex) {
+			bitmapIndex = new BitmapIndex(dataset);
+			root = new Node(bitmapIndex.allRows(), bitmapIndex.countValues(bitmapIndex.allRows(), classColumn));
+		} else {
+			bitmapIndex = null;
+			rows = new int[dataset.numRows()];
+			for (int row = 0; row < rows.length; row++) {
+				rows[row] = row;
 			}
-			root.data.add(point);
-
+			root = new Node(0, rows.length, countClasses(0, rows.length));
 		}
-		bin.close();
+		positiveClassCode = dataset.getDictionary(classColumn).codeOf(positiveClassValue);
+		negativeClassCode = dataset.getDictionary(classColumn).codeOf(negativeClassValue);
 		return 1;
 
 	}
@@ -293,16 +564,21 @@ public class DecisionTree {
 
 		// If we're at a leaf print out the class.
 		if (node.children == null) {
-			ArrayList<String> values = getAllValuesInColumn(node.data, outputAttribute);
+			ArrayList<String> values = new ArrayList<String>();
+			for (int code = 0; code < node.classCounts.length; code++) {
+				if (node.classCounts[code] > 0) {
+					values.add(dataset.getDictionary(outputAttribute).valueOf(code));
+				}
+			}
 
 			// If we know the class then print it, otherwise, print the majority
 			// of the parent.
 			if (values.size() == 1) {
-				System.out.println(tab + "  " + attributeNames[outputAttribute] + 
+				System.out.println(tab + "  " + dataset.getColumnName(outputAttribute) +
 						" = \"" + values.get(0) + "\";");
 			} else {
-				System.out.print(tab + "  " + attributeNames[outputAttribute] + " = {");
-				System.out.print(majorityClass(node.parent.data));
+				System.out.print(tab + "  " + dataset.getColumnName(outputAttribute) + " = {");
+				System.out.print(majorityClass(node.parent));
 				System.out.println( " };");
 			}
 			return;
@@ -313,8 +589,8 @@ public class DecisionTree {
 
 		for (int i=0; i < numValues; i++) {
 			System.out.println(tab + "if ( " + 
-					attributeNames[node.splitAttribute] + " == \"" +
-					attributes.get(node.splitAttribute).get(i) + "\") {" );
+					dataset.getColumnName(node.splitAttribute) + " == \"" +
+					dataset.getDictionary(node.splitAttribute).valueOf(i) + "\") {" );
 			printTree(node.children[i], tab + "  ");
 			if (i != numValues - 1 ) {
 				System.out.print(tab +  "} else ");
@@ -329,11 +605,90 @@ public class DecisionTree {
 		for(int i = 0; i < numAttributes; i++) {
 			splitAttributes.add(i);
 		}
-		splitNode(root, splitAttributes);
+		if (subtreePool == null) {
+			splitNode(root, splitAttributes);
+		} else {
+			subtreePool.invoke(new SubtreeTask(root, splitAttributes));
+		}
 		printTree(root, "");
+		compiledTree = compile();
 	}
-	
+
+	/**
+	 * Freezes the trained tree into flat arrays for prediction.
+	 * A leaf predicts the majority class of its rows, or of its parent's rows
+	 * if it has none, matching what printTree shows. A split node keeps the
+	 * majority class of its own rows for values it has no child for.
+	 * @return The compiled tree.
+	 */
+	public CompiledTree compile() {
+		// Number the nodes breadth-first, so every node's children are numbered after it.
+		ArrayList<Node> nodes = new ArrayList<Node>();
+		nodes.add(root);
+		int childSlots = 0;
+		for (int n = 0; n < nodes.size(); n++) {
+			Node node = nodes.get(n);
+			if (node.children != null) {
+				nodes.addAll(Arrays.asList(node.children));
+				childSlots += node.children.length;
+			}
+		}
+
+		int[] splitColumn = new int[nodes.size()];
+		int[] childBase = new int[nodes.size()];
+		int[] childCount = new int[nodes.size()];
+		int[] childTable = new int[childSlots];
+		int[] nodeClass = new int[nodes.size()];
+		int nextChild = 1;
+		int nextSlot = 0;
+		for (int n = 0; n < nodes.size(); n++) {
+			Node node = nodes.get(n);
+			nodeClass[n] = majorityClassCode(node);
+			if (nodeClass[n] < 0 && node.parent != null) {
+				nodeClass[n] = majorityClassCode(node.parent);
+			}
+			if (node.children == null) {
+				splitColumn[n] = -1;
+				continue;
+			}
+			splitColumn[n] = node.splitAttribute;
+			childBase[n] = nextSlot;
+			childCount[n] = node.children.length;
+			// Child j was made for value code j.
+			for (int j = 0; j < node.children.length; j++) {
+				childTable[nextSlot++] = nextChild++;
+			}
+		}
+		return new CompiledTree(splitColumn, childBase, childCount, childTable, nodeClass);
+	}
+
+	/**
+	 * Saves the trained tree in the {@link ModelFile} format, so it can be
+	 * loaded with {@link ModelFile#load} and used without retraining.
+	 * @param fileName The file to write.
+	 * @throws IOException If the file can't be written.
+	 */
+	public void saveModel(String fileName) throws IOException {
+		String[] columnNames = new String[dataset.numColumns()];
+		for (int i = 0; i < columnNames.length; i++) {
+			columnNames[i] = dataset.getColumnName(i);
+		}
+		ModelFile.write(fileName, compiledTree, columnNames, dataset.getDictionaries(), classColumn);
+	}
+
 	public void classifyTestData(String testData) throws IOException {
+		classifyTestData(testData, Runtime.getRuntime().availableProcessors(), null);
+	}
+
+	/**
+	 * Classifies a test file in chunks on several threads, and prints the
+	 * accuracy and the number of rows classified per second.
+	 * @param testData The test file, with a header line like the training data.
+	 * @param threads The number of worker threads.
+	 * @param sink Receives the prediction for every row, in file order, or null.
+	 * @throws IOException If the file can't be read, or the sink fails.
+	 */
+	public void classifyTestData(String testData, int threads, PredictionSink sink) throws IOException {
 
 		FileInputStream in;
 		File inputFile = new File(testData);
@@ -343,99 +698,150 @@ public class DecisionTree {
 		String input = bin.readLine();
 		if (input == null) {
 			System.err.println("Empty test file!");
+			in.close();
+			return;
 		}
 		StringTokenizer tokenizer = new StringTokenizer(input);
 		int numAttributes = tokenizer.countTokens();
 
 		System.out.println("Input: " + input);
 		System.out.println("Tokenized: has " + numAttributes + " columns.");
-		int instanceCount = 0;
-
-		int correctPredictions = 0;
-
-		while (true) {
-			input = bin.readLine();
-			if (input == null) {
-				break;
-			}
-			
-			instanceCount++;
-			String[] testInstanceAttributes = new String[numAttributes];
-
-			tokenizer = new StringTokenizer(input);
-
-			int i = 0;
-			while (tokenizer.hasMoreTokens()) {
-				testInstanceAttributes[i] = tokenizer.nextToken();
-				i++;
-			}
-			
-			// Recursive classifier.
-			correctPredictions += predict(testInstanceAttributes, root);
 
+		// Test values are encoded with the training dictionaries; values
+		// never seen in training become -1.
+		BatchClassifier.Result result;
+		try {
+			result = new BatchClassifier(compiledTree, dataset.getDictionaries(), classColumn, threads).classify(bin, sink);
+		} finally {
+			in.close();
 		}
+		long instanceCount = result.getRows();
+		long correctPredictions = result.getCorrect();
+
 		System.out.println("" + correctPredictions + " instances predicted correctly, and " +
 				(instanceCount - correctPredictions) + " incorrectly classified, out of "
 						+ instanceCount + " test instances.");
 		System.out.println("Accuracy: " + correctPredictions + "/" + instanceCount + " == " + (double) correctPredictions / instanceCount);
-		in.close();
+		System.out.println("Classified " + instanceCount + " rows on " + threads + " threads at "
+				+ (long) result.getRowsPerSecond() + " rows/sec.");
 	}
-	
-	private int predict(String[] testInstanceAttributes, Node currentNode) {
-		
-		int attributeForSplitting = currentNode.splitAttribute;
-		Node nextChild = new Node();
-		if (attributeForSplitting == -1) {
-			
-			// Return the classification count for this node,
-			// cause this is as good as it gets.
-			String result = majorityClass(currentNode.data);
-			return result.equals(testInstanceAttributes[classColumn]) ? 1 : 0;
-			
-		} else {
-			// Figure out what attribute this node's children are split on.
-			// Recurse in the child node for this instance's value of that
-			// attribute.
-			String testInstanceSplitValue = testInstanceAttributes[attributeForSplitting];
-			boolean valueFound = false;
-			for (int i = 0; i < currentNode.children.length; i++) {
-				if (currentNode.children[i].splitValue.equals(testInstanceSplitValue)) {
-					valueFound = true;
-					nextChild = currentNode.children[i];
-					break;
-				}
+
+	/**
+	 * Scores a range of the candidate columns of one node, splitting the range
+	 * in half until each task holds a single column.
+	 */
+	class ColumnScoringTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Node node;
+		// The node's rows of each class; only set when it holds its rows as a bitmap.
+		private final RowBitmap positives;
+		private final RowBitmap negatives;
+		private final List<Integer> attributeList;
+		private final double[] splitEntropies;
+		private final int from;
+		private final int to;
+
+		ColumnScoringTask(Node node, RowBitmap positives, RowBitmap negatives, List<Integer> attributeList,
+				double[] splitEntropies, int from, int to) {
+			this.node = node;
+			this.positives = positives;
+			this.negatives = negatives;
+			this.attributeList = attributeList;
+			this.splitEntropies = splitEntropies;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ColumnScoringTask(node, positives, negatives, attributeList, splitEntropies, from, middle),
+						new ColumnScoringTask(node, positives, negatives, attributeList, splitEntropies, middle, to));
+				return;
 			}
-			if (!valueFound) {
-				System.out.println("There was a problem: the value split on during testing"
-						+ " does not exist as a child node!");
+			int column = attributeList.get(from);
+			if (column != classColumn) {
+				int[][] columnCounts = node.members != null
+						? bitmapIndex.countColumnByClass(node.members, positives, negatives, column)
+						: countColumnByClass(node.from, node.to, column);
+				splitEntropies[from] = calculateSplitEntropy(columnCounts, node.size);
 			}
 		}
-		return predict(testInstanceAttributes, nextChild);
+	}
+
+	/**
+	 * Builds the subtree under one node.
+	 */
+	class SubtreeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Node node;
+		private final List<Integer> attributeList;
+
+		SubtreeTask(Node node, List<Integer> attributeList) {
+			this.node = node;
+			this.attributeList = attributeList;
+		}
+
+		@Override
+		protected void compute() {
+			splitNode(node, attributeList);
+		}
 	}
 
 	class Node {
 		private double entropy; 
 
-		private ArrayList<Instance> data;
+		// This node's rows are rows[from] up to, not including, rows[to].
+		private final int from;
+		private final int to;
+
+		// With the bitmap index, this node's rows instead; from and to are then unused.
+		private final RowBitmap members;
+
+		// The number of rows in this node.
+		private final int size;
+
+		// How many of this node's rows hold each class, indexed by class code.
+		private final int[] classCounts;
 
 		// If this isn't a leaf node, the attribute used to divide the node.
 		// -1 means that this node is a leaf.
 		private int splitAttribute;
 
-		// The attribute value used to create this node.
+		// The code of the attribute value used to create this node.
 		// This is the value of the parent's splitAttribute that led to this
 		// node being created.
-		private String splitValue;
+		private int splitValue;
 
 		private Node[] children;
 		private Node parent;
 
 		Node() {
-			data = new ArrayList<Instance>();
+			this(0, 0, new int[0]);
+		}
+
+		Node(int from, int to, int[] classCounts) {
+			this.from = from;
+			this.to = to;
+			this.classCounts = classCounts;
+			members = null;
+			size = to - from;
+			splitAttribute = -1;
+		}
+
+		Node(RowBitmap members, int[] classCounts) {
+			this.from = 0;
+			this.to = 0;
+			this.classCounts = classCounts;
+			this.members = members;
+			size = members.cardinality();
 			splitAttribute = -1;
 		}
 
 	}
-	
 
-}
\ No newline at end of file
+
+}
@@ -2,6 +2,7 @@ package part1;
 
 import java.io.IOException;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 
 public class DecisionTreeRunner {
@@ -98,6 +99,17 @@ public class DecisionTreeRunner {
 		}
 
 		DecisionTree myID3 = new DecisionTree(colNum, posVal, negVal);
+		// An optional argument scores split candidates on that many threads.
+		// A second one also builds subtrees of at least that many rows in parallel.
+		if (args.length > 0) {
+			ForkJoinPool pool = new ForkJoinPool(Integer.parseInt(args[0]));
+			myID3.setSplitPool(pool);
+			if (args.length > 1) {
+				myID3.setSubtreePool(pool, Integer.parseInt(args[1]));
+			}
+		}
+		// -Dbitmap.index=true counts through a bitmap index instead of scanning rows.
+		myID3.setBitmapIndex(Boolean.getBoolean("bitmap.index"));
 
 		int status = -1;
 		try {
@@ -0,0 +1,296 @@
+package part1;
+
+import java.util.Arrays;
+
+/**
+ * A compressed set of row indexes, in the manner of a Roaring bitmap. Rows
+ * are grouped into chunks of 65,536 by their upper 16 bits. A chunk with few
+ * rows keeps their lower 16 bits in a sorted array; a chunk with many keeps a
+ * 65,536-bit bitmap. So a sparse set costs about two bytes a row, a dense one
+ * one bit a row, and intersecting two sets costs time in proportion to their
+ * stored size rather than to the number of rows in the dataset.
+ *
+ * Rows are added in increasing order while building; after that a bitmap is
+ * never changed, so it can be shared between threads.
+ */
+public class RowBitmap {
+
+	/**
+	 * The most rows a chunk keeps as an array; past this a bitmap is smaller.
+	 */
+	private static final int ARRAY_LIMIT = 4096;
+
+	// Upper 16 bits of the rows in each chunk, ascending, and the chunk itself.
+	private char[] keys = new char[0];
+	private Container[] containers = new Container[0];
+	private int size;
+
+	/**
+	 * Adds a row. Rows must be added in increasing order.
+	 * @param row The row index.
+	 */
+	public void add(int row) {
+		char key = (char) (row >>> 16);
+		if (size == 0 || keys[size - 1] != key) {
+			if (size == keys.length) {
+				int capacity = Math.max(4, size * 2);
+				keys = Arrays.copyOf(keys, capacity);
+				containers = Arrays.copyOf(containers, capacity);
+			}
+			keys[size] = key;
+			containers[size] = new ArrayContainer(new char[16], 0);
+			size++;
+		}
+		containers[size - 1] = containers[size - 1].add((char) row);
+	}
+
+	/**
+	 * @return The number of rows in the set.
+	 */
+	public int cardinality() {
+		int cardinality = 0;
+		for (int i = 0; i < size; i++) {
+			cardinality += containers[i].cardinality();
+		}
+		return cardinality;
+	}
+
+	/**
+	 * @param other Another set.
+	 * @return The rows in both sets.
+	 */
+	public RowBitmap and(RowBitmap other) {
+		RowBitmap result = new RowBitmap();
+		result.keys = new char[Math.min(size, other.size)];
+		result.containers = new Container[result.keys.length];
+		int i = 0;
+		int j = 0;
+		while (i < size && j < other.size) {
+			if (keys[i] < other.keys[j]) {
+				i++;
+			} else if (keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				Container both = containers[i].and(other.containers[j]);
+				if (both.cardinality() > 0) {
+					result.keys[result.size] = keys[i];
+					result.containers[result.size] = both;
+					result.size++;
+				}
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Counts the rows in both sets without building their intersection.
+	 * @param other Another set.
+	 * @return The number of rows in both sets.
+	 */
+	public int andCardinality(RowBitmap other) {
+		int cardinality = 0;
+		int i = 0;
+		int j = 0;
+		while (i < size && j < other.size) {
+			if (keys[i] < other.keys[j]) {
+				i++;
+			} else if (keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				cardinality += containers[i].andCardinality(other.containers[j]);
+				i++;
+				j++;
+			}
+		}
+		return cardinality;
+	}
+
+	/**
+	 * Releases the spare capacity left over from building.
+	 */
+	public void trimToSize() {
+		keys = Arrays.copyOf(keys, size);
+		containers = Arrays.copyOf(containers, size);
+		for (int i = 0; i < size; i++) {
+			containers[i] = containers[i].trim();
+		}
+	}
+
+	/**
+	 * The rows of one chunk, by their lower 16 bits.
+	 */
+	private static abstract class Container {
+		abstract int cardinality();
+
+		/**
+		 * Adds a value larger than any already present.
+		 * @return This container, or a replacement if it had to change kind.
+		 */
+		abstract Container add(char value);
+
+		abstract Container and(Container other);
+
+		abstract int andCardinality(Container other);
+
+		abstract Container trim();
+	}
+
+	private static class ArrayContainer extends Container {
+		private char[] values;
+		private int cardinality;
+
+		ArrayContainer(char[] values, int cardinality) {
+			this.values = values;
+			this.cardinality = cardinality;
+		}
+
+		int cardinality() {
+			return cardinality;
+		}
+
+		Container add(char value) {
+			if (cardinality == ARRAY_LIMIT) {
+				BitmapContainer bitmap = new BitmapContainer();
+				for (int i = 0; i < cardinality; i++) {
+					bitmap.set(values[i]);
+				}
+				bitmap.set(value);
+				return bitmap;
+			}
+			if (cardinality == values.length) {
+				values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, cardinality * 2));
+			}
+			values[cardinality++] = value;
+			return this;
+		}
+
+		Container and(Container other) {
+			char[] both = new char[cardinality];
+			int n = 0;
+			if (other instanceof BitmapContainer) {
+				BitmapContainer bitmap = (BitmapContainer) other;
+				for (int i = 0; i < cardinality; i++) {
+					if (bitmap.contains(values[i])) {
+						both[n++] = values[i];
+					}
+				}
+			} else {
+				ArrayContainer array = (ArrayContainer) other;
+				int i = 0;
+				int j = 0;
+				while (i < cardinality && j < array.cardinality) {
+					if (values[i] < array.values[j]) {
+						i++;
+					} else if (values[i] > array.values[j]) {
+						j++;
+					} else {
+						both[n++] = values[i];
+						i++;
+						j++;
+					}
+				}
+			}
+			return new ArrayContainer(Arrays.copyOf(both, n), n);
+		}
+
+		int andCardinality(Container other) {
+			int n = 0;
+			if (other instanceof BitmapContainer) {
+				BitmapContainer bitmap = (BitmapContainer) other;
+				for (int i = 0; i < cardinality; i++) {
+					if (bitmap.contains(values[i])) {
+						n++;
+					}
+				}
+			} else {
+				ArrayContainer array = (ArrayContainer) other;
+				int i = 0;
+				int j = 0;
+				while (i < cardinality && j < array.cardinality) {
+					if (values[i] < array.values[j]) {
+						i++;
+					} else if (values[i] > array.values[j]) {
+						j++;
+					} else {
+						n++;
+						i++;
+						j++;
+					}
+				}
+			}
+			return n;
+		}
+
+		Container trim() {
+			values = Arrays.copyOf(values, cardinality);
+			return this;
+		}
+	}
+
+	private static class BitmapContainer extends Container {
+		private final long[] words = new long[1024];
+		private int cardinality;
+
+		void set(char value) {
+			words[value >>> 6] |= 1L << value;
+			cardinality++;
+		}
+
+		boolean contains(char value) {
+			return (words[value >>> 6] & (1L << value)) != 0;
+		}
+
+		int cardinality() {
+			return cardinality;
+		}
+
+		Container add(char value) {
+			set(value);
+			return this;
+		}
+
+		Container and(Container other) {
+			if (other instanceof ArrayContainer) {
+				return other.and(this);
+			}
+			BitmapContainer bitmap = (BitmapContainer) other;
+			int n = andCardinality(bitmap);
+			if (n > ARRAY_LIMIT) {
+				BitmapContainer both = new BitmapContainer();
+				for (int k = 0; k < words.length; k++) {
+					both.words[k] = words[k] & bitmap.words[k];
+				}
+				both.cardinality = n;
+				return both;
+			}
+			char[] values = new char[n];
+			int i = 0;
+			for (int k = 0; k < words.length; k++) {
+				long word = words[k] & bitmap.words[k];
+				while (word != 0) {
+					values[i++] = (char) ((k << 6) + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return new ArrayContainer(values, n);
+		}
+
+		int andCardinality(Container other) {
+			if (other instanceof ArrayContainer) {
+				return other.andCardinality(this);
+			}
+			long[] otherWords = ((BitmapContainer) other).words;
+			int n = 0;
+			for (int k = 0; k < words.length; k++) {
+				n += Long.bitCount(words[k] & otherWords[k]);
+			}
+			return n;
+		}
+
+		Container trim() {
+			return this;
+		}
+	}
+}
@@ -1,7 +1,16 @@
 package part3;
 
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import common.BatchClassifier;
+import common.ChunkedLoader;
+import common.CompiledTree;
+import common.ModelFile;
+import common.PredictionSink;
 
 /**
  * An ID3 tree designed to handle large amounts of data.
@@ -18,6 +27,34 @@ public class BigDataDecisionTree {
 	private final String negativeClassValue;
 	// attributes used to map column to possible values within that column.
 	Node root = new Node(); 
+	// The codes, buffers and pages of the data the tree was last given.
+	TreeContext context;
+	// The trained tree, flattened for prediction.
+	CompiledTree compiledTree;
+	// If set, candidate columns are scored concurrently on this pool.
+	private ForkJoinPool splitPool;
+	// Reads node pages back from disk.
+	private PageScanner pageScanner;
+	// Whether pages are read by memory-mapping them instead of through a buffer.
+	private boolean memoryMappedPages;
+	// Whether the tree is built a level at a time, with one scan of the data per level.
+	private boolean levelWise;
+	// Whether the leaves of the trained tree hold all of its rows in pages,
+	// which updateData needs to rebuild subtrees from.
+	private boolean leafPages;
+	// Where this tree's pages are written, and how much memory its buffered rows may take.
+	private String pageDirectory = "node_data";
+	private long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+	// The number of threads that parse the training file.
+	private int loadThreads = Runtime.getRuntime().availableProcessors();
+	// If set, the training data is held by shard workers instead of this process.
+	private ShardCoordinator shards;
+	// Streaming mode: the chance the Hoeffding bound picks the wrong column,
+	// the gap under which two columns count as tied, and how many rows a leaf
+	// collects between split attempts.
+	private double hoeffdingConfidence = 1e-7;
+	private double hoeffdingTieThreshold = 0.05;
+	private int hoeffdingGracePeriod = 200;
 
 	/**
 	 * Constructs a new Big Data ID3 tree.
@@ -31,6 +68,94 @@ public class BigDataDecisionTree {
 		this.negativeClassValue = negativeClassValue;
 	}
 
+	/**
+	 * Turns on parallel split selection: every candidate column of a node is
+	 * scored as its own task on the given pool. Pass null to score the columns
+	 * one after another. The chosen split is the same either way.
+	 * @param pool The pool to score columns on, or null.
+	 */
+	public void setSplitPool(ForkJoinPool pool) {
+		splitPool = pool;
+	}
+
+	/**
+	 * Chooses how {@link #createDecisionTree()} builds the tree. Depth-first,
+	 * the default, pages every node's rows and reads each node on its own, so
+	 * reads grow with the number of nodes. Level-wise, in the manner of SLIQ,
+	 * only the root is paged: each level of the tree is decided from counts
+	 * already in the heap, and one scan of the root's pages counts every row
+	 * into its node on the next level, so reads grow with the depth. Trees
+	 * built level-wise have no pages below the root, so
+	 * {@link #updateData(String)} refuses to update them.
+	 * @param levelWise True to build level-wise, false to build depth-first.
+	 */
+	public void setLevelWise(boolean levelWise) {
+		this.levelWise = levelWise;
+	}
+
+	/**
+	 * Chooses how node pages are read back during training. Memory-mapped pages
+	 * are decoded in place, without being copied through the heap; buffered
+	 * pages are read through a small reusable buffer. Must be set before
+	 * {@link #readData(String)}.
+	 * @param mapped True to memory-map pages, false to read them through a buffer.
+	 */
+	public void setMemoryMappedPages(boolean mapped) {
+		memoryMappedPages = mapped;
+	}
+
+	/**
+	 * Sets how many threads {@link #readData(String)} parses the file on.
+	 * Defaults to the number of processors. The data read is the same
+	 * whatever the number.
+	 * @param threads The number of threads, at least 1.
+	 */
+	public void setLoadThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Need at least one thread to load with.");
+		}
+		loadThreads = threads;
+	}
+
+	/**
+	 * Sets the directory that node pages are written to, in place of
+	 * node_data. It is made if it doesn't exist, and each tree keeps its pages
+	 * in a directory of its own inside it. Must be set before
+	 * {@link #readData(String)}.
+	 * @param directory The directory.
+	 */
+	public void setPageDirectory(String directory) {
+		pageDirectory = directory;
+	}
+
+	/**
+	 * Sets how much memory the rows buffered in nodes may take, pages being
+	 * written included, before the largest buffers are paged out. Defaults to
+	 * half of the maximum heap size. Must be set before {@link #readData(String)}.
+	 * @param bytes The budget, in bytes.
+	 */
+	public void setMemoryBudget(long bytes) {
+		if (bytes <= 0) {
+			throw new IllegalArgumentException("The memory budget must be positive.");
+		}
+		memoryBudget = bytes;
+	}
+
+	/**
+	 * Tunes the streaming builder used by {@link #streamData(InputStream)}.
+	 * @param confidence The chance of splitting on a column that is not really the best, e.g. 1e-7.
+	 * @param tieThreshold How close the two best columns may be before either will do, e.g. 0.05.
+	 * @param gracePeriod How many rows a leaf collects between split attempts, e.g. 200.
+	 */
+	public void setHoeffdingParameters(double confidence, double tieThreshold, int gracePeriod) {
+		if (confidence <= 0 || confidence >= 1 || tieThreshold < 0 || gracePeriod < 1) {
+			throw new IllegalArgumentException("Need 0 < confidence < 1, tieThreshold >= 0 and gracePeriod >= 1.");
+		}
+		hoeffdingConfidence = confidence;
+		hoeffdingTieThreshold = tieThreshold;
+		hoeffdingGracePeriod = gracePeriod;
+	}
+
 	/**
 	 * Returns all of the possible values within a specific column of data, for a specific set
 	 * of instances.
@@ -38,10 +163,10 @@ public class BigDataDecisionTree {
 	 * @param column The column we are selecting values from.
 	 * @return Every value found within that column, without duplicates.
 	 */
-	public ArrayList<String> getAllValuesInColumn(ArrayList<String[]> data, int column) {
+	public ArrayList<String> getAllValuesInColumn(ArrayList<int[]> data, int column) {
 		ArrayList<String> values = new ArrayList<String>();
-		for (String[] instance : data) {
-			String value = instance[column];
+		for (int[] instance : data) {
+			String value = context.decode(column, instance[column]);
 			int index = values.indexOf(value);
 			if (index < 0) {
 				values.add(value);
@@ -60,30 +185,6 @@ public class BigDataDecisionTree {
 		return result;
 	}
 
-	/**
-	 * Finds all of the instances within a set of instances that have a specific value in a specific column.
-	 * It will return an empty set if no items have that value in that column.
-	 * 
-	 * @param data The set of instances to reduce.
-	 * @param column The column number to search within.
-	 * @param value The specific value that all instances must match.
-	 * @return A list of all instances that contained that value within that column.
-	 */
-	public ArrayList<String[]> getCompleteSubset(Node node, int column, String value) {
-		
-		ArrayList<String[]> subset = new ArrayList<String[]>();
-		// read from current node's disk.
-		
-		for (int i = 0; i < data.size(); i++) {
-			String instanceValue = data.get(i)[column];
-			if (instanceValue.equals(value)) {
-				subset.add(data.get(i));
-			}
-		}
-
-		return subset;
-	}
-	
 	/**
 	 * Calculates the entropy for a set of instances.
 	 * @param data The instances to be examined for entropy.
@@ -91,8 +192,8 @@ public class BigDataDecisionTree {
 	 */
 	public double calculateEntropy(Node node) {
 		
-		// If there are no pages, then there is no data
-		if (node.getAllPages() == null) {
+		// No rows, no entropy.
+		if (node.getNumOfInstances() == 0) {
 			return 0;
 		}
 
@@ -100,125 +201,124 @@ public class BigDataDecisionTree {
 		int positiveOccurrences = node.dataMapper.getWordFrequency(classColumn, positiveClassValue);
 		int negativeOccurrences = node.dataMapper.getWordFrequency(classColumn, negativeClassValue);
 
+		return calculateEntropy(positiveOccurrences, negativeOccurrences, node.getNumOfInstances());
+
+	}
+
+	/**
+	 * Calculates the entropy of a set of instances from its class counts alone.
+	 * @param positiveOccurrences Instances in the set with the positive class value.
+	 * @param negativeOccurrences Instances in the set with the negative class value.
+	 * @param totalOccurrences Size of the set.
+	 * @return The amount of entropy in that set.
+	 */
+	public double calculateEntropy(int positiveOccurrences, int negativeOccurrences, int totalOccurrences) {
 		// Pure set.
 		if (positiveOccurrences < 1 || negativeOccurrences < 1) {
 			return 0;
 		}
 
-		double positive = (double) positiveOccurrences / node.getNumOfInstances();
-		double negative = (double) negativeOccurrences / node.getNumOfInstances();
+		double positive = (double) positiveOccurrences / totalOccurrences;
+		double negative = (double) negativeOccurrences / totalOccurrences;
 
 		double entropy = -(positive * (Math.log(positive) / Math.log(2))
 				+ negative * (Math.log(negative) / Math.log(2)));
 
 		return entropy;
+	}
 
+	/**
+	 * Reads every row of a node's pages once, handing each row to the visitor.
+	 * Waits first for any pages still being written.
+	 * @param pages The node's page files.
+	 * @param visitor Receives each row.
+	 * @throws IOException If a page can't be read.
+	 */
+	void scanPages(String[] pages, RowVisitor visitor) throws IOException {
+		context.pageWriter.flush();
+		for (String page : pages) {
+			pageScanner.scan(page, visitor);
+		}
 	}
 
 	/**
-	 * Recursive method to split nodes into children for the greatest entropy gain.
-	 * @param node The parent node to split if it is not meant to be a leaf.
-	 * @param attributeList Remaining attribute columns that have not yet been split.
+	 * The entropy left after splitting on a column: the entropy of every child,
+	 * weighted by the child's size.
+	 * @param columnCounts The value-by-class counts of the column, indexed by value code.
+	 * @param totalOccurrences Size of the node being split.
+	 * @return The weighted entropy of the children.
 	 */
-	public void splitNode(Node node, ArrayList<Integer> attributeList) {
-		// There will always be at least one attribute left in the list
-		// (the class attribute that we're training for).
-		if (attributeList.size() == 1) {
-			return;
+	public double calculateSplitEntropy(int[][] columnCounts, int totalOccurrences) {
+		// Total the entropy for that category of children, to determine best gain afterward.
+		double runningEntropy = 0.0;
+		for (int[] valueCounts : columnCounts) {
+			if (valueCounts[2] == 0) {
+				continue;
+			}
+			double currentEntropy = calculateEntropy(valueCounts[0], valueCounts[1], valueCounts[2]);
+			runningEntropy += valueCounts[2] * currentEntropy;
 		}
-		
+
+		// Gain(S, CurrentColumn) = node entropy - (childOneTotal/total)*childOneEntropy - (childTwoTotal/total)*childTwoEntropy) . . 
+		// Do Gain(S, EachRemainingColumn) until we find the largest result (means greatest drop in entropy)
+		// We did runningEntropy = childOneTotal*childOneEntropy + childTwoTotal*childTwoEntropy. . .etc
+		// Now we divide it all by size of the subset.
+		return runningEntropy / (double) totalOccurrences;
+	}
+
+	/**
+	 * Copies an attribute list, leaving out one attribute.
+	 * @param attributeList The attributes to copy.
+	 * @param attribute The attribute to leave out.
+	 * @return A read-only list of the remaining attributes, in the same order.
+	 */
+	static List<Integer> withoutAttribute(List<Integer> attributeList, int attribute) {
+		ArrayList<Integer> remaining = new ArrayList<Integer>(attributeList.size() - 1);
+		for (int column : attributeList) {
+			if (column != attribute) {
+				remaining.add(column);
+			}
+		}
+		return Collections.unmodifiableList(remaining);
+	}
+
+	/**
+	 * Picks the column to split a node on.
+	 * @param statistics The value-by-class counts of the node's rows.
+	 * @param attributeList The candidate columns, including the class column.
+	 * @return The column with the lowest weighted entropy, or -1 if there is no candidate.
+	 */
+	int chooseSplit(SplitStatistics statistics, List<Integer> attributeList) {
 		double bestEntropy = 0.0;
 		boolean selected = false;
 		int selectedAttribute = -1;
-		
-		node.number = ++numNodes;
-		node.entropy = calculateEntropy(node);
-		// No need to split -- this node has perfect entropy.
-		if (node.entropy == 0.0) {
-			return;
+
+		// Weighted entropy of the children for each candidate, in attributeList order.
+		double[] splitEntropies = new double[attributeList.size()];
+		if (splitPool == null) {
+			for (int i = 0; i < attributeList.size(); i++) {
+				int currentColumn = attributeList.get(i);
+				if (classColumn != currentColumn) {
+					splitEntropies[i] = calculateSplitEntropy(
+							statistics.getCounts(currentColumn), statistics.getRows());
+				}
+			}
+		} else {
+			splitPool.invoke(new ColumnScoringTask(statistics, attributeList,
+					splitEntropies, 0, attributeList.size()));
 		}
 
-		// Need to make children.
 		// Find the maximum decrease in entropy.
 		// Loop over all the different attributes, skipping the class attribute.
+		// Only a strictly lower entropy replaces the pick, so ties go to the
+		// earliest column in the list whether or not it was scored in parallel.
 		for (int i = 0; i < attributeList.size(); i++) {
 			int currentColumn = attributeList.get(i);
 			if (classColumn == currentColumn) {
 				continue;
 			}
 
-			// Loop over all the values of this attribute (all the children that would
-			// be created if this attribute is chosen).
-			
-			// Total the entropy for that category of children, to determine best gain afterward.
-			// Don't need to write it anywhere.
-			// Read from current node's data files.
-			
-			String[] pages = node.getAllPages();
-			// Make sure there really is data to examine.
-			if (pages == null) {
-				System.out.println("There were no pages to read. If you're reading"
-						+ " this, something went wrong. . .");
-				continue;
-			}
-			
-			double runningEntropy = 0.0;
-			
-			// Should I make a cache of the mappings (positives/negatives) for this column?
-			// Not writing to disk yet.
-			
-			// Each child produced if split on this value.
-			for (String currentValue : node.getValuesForColumn(currentColumn)) {
-				int posInstances = 0;
-				for (int j = 0; j < pages.length; i++) {
-					// Make a file reader, and a string tokenizer.
-					// Open the current page of the parent with the file reader.
-					FileInputStream in;
-					// error handle for file we can't read/write/doesn't exist
-					File inputFile = new File(pages[j]);
-					in = new FileInputStream(inputFile);
-
-					BufferedReader bin = new BufferedReader(new InputStreamReader(in));
-					String input = bin.readLine();
-					if (input == null) {
-						System.err.println("Empty node file!");
-					}
-					StringTokenizer tokenizer;
-					while (true) {
-						input = bin.readLine();
-						// EOF
-						if (input == null) {
-							break;
-						}
-						// If the current column didn't match the value we want, continue.
-
-						tokenizer = new StringTokenizer(input);
-
-						int tokenCount = tokenizer.countTokens();
-						for (int i = 0; i < tokenCount; i++) {
-							if (tokenizer.nextToken();
-						}
-					// Each line that matches value in column gets checked
-					// for positive/negatve.
-					//for (line in pages[j]) {
-						// if matches value in column && matches pos class
-						// 	posInstances++; 
-					//}											
-				}
-				if (subsetForCurrentColumnAndValue.isEmpty()) {
-					continue;
-				}
-
-				double currentEntropy = calculateEntropy(subsetForCurrentColumnAndValue);
-				runningEntropy += subsetForCurrentColumnAndValue.size() * currentEntropy;
-			}
-
-			// Gain(S, CurrentColumn) = node entropy - (childOneTotal/total)*childOneEntropy - (childTwoTotal/total)*childTwoEntropy) . . 
-			// Do Gain(S, EachRemainingColumn) until we find the largest result (means greatest drop in entropy)
-			// We did runningEntropy = childOneTotal*childOneEntropy + childTwoTotal*childTwoEntropy. . .etc
-			// Now we divide it all by size of the subset.
-
-			runningEntropy = runningEntropy / (double) node.localData.size();
+			double runningEntropy = splitEntropies[i];
 			if (!selected) {
 				selected = true;
 				bestEntropy = runningEntropy;
@@ -229,36 +329,102 @@ public class BigDataDecisionTree {
 			}
 		}
 
-		// No attributes worth splitting on.
-		if (!selected) {
+		return selectedAttribute;
+	}
+
+	/**
+	 * Recursive method to split nodes into children for the greatest entropy gain.
+	 * @param node The parent node to split if it is not meant to be a leaf.
+	 * @param attributeList Remaining attribute columns that have not yet been split.
+	 */
+	public void splitNode(Node node, List<Integer> attributeList) {
+		// There will always be at least one attribute left in the list
+		// (the class attribute that we're training for).
+		node.attributeList = attributeList;
+		if (attributeList.size() == 1) {
+			return;
+		}
+		
+		node.entropy = calculateEntropy(node);
+		// No need to split -- this node has perfect entropy.
+		if (node.entropy == 0.0) {
 			return;
 		}
 
-		// Now divide the dataset using the selected attribute.
-		String[] valuesInColumn = node.getValuesForColumn(selectedAttribute);
-		if (valuesInColumn.length < 1 || "".equals(valuesInColumn[0])) {
+		// The node's mapper counted every row by value and class as it came in,
+		// so choosing the split reads no pages.
+		SplitStatistics statistics = node.dataMapper.getSplitStatistics(attributeList);
+		int selectedAttribute = chooseSplit(statistics, attributeList);
+
+		// No attributes worth splitting on.
+		if (selectedAttribute < 0) {
 			return;
 		}
-		int numValues = valuesInColumn.length;
+
+		// Now divide the dataset using the selected attribute: one child for
+		// every value this node has, filled by a single pass over its rows.
 		node.splitAttribute = selectedAttribute;
-		node.children = new Node[numValues];
-		for (int j = 0; j < numValues; j++) {
-			node.children[j] = new Node(numAttributes);
-			node.children[j].parent = node;
-			String thisValue = valuesInColumn[j];
-			// add subset to datamapper & compress
-			for (String[] instance : getCompleteSubset(node.localData, selectedAttribute, thisValue)) {
-				node.children[j].addAndCompressData(instance);				
-			}
-			node.children[j].splitValue = thisValue;
+		int[] codes = node.dataMapper.valueFrequencyInColumn[selectedAttribute].keys();
+		node.children = new Node[codes.length];
+		for (int j = 0; j < codes.length; j++) {
+			node.children[j] = newChild(node, codes[j]);
+		}
+		node.indexChildren(context.getCardinality(selectedAttribute));
+		try {
+			partition(node);
+		} catch (IOException e) {
+			System.err.println("Unable to read the pages of node " + node.number + ": " + e);
+			return;
 		}
 
 		// Recursively divide children nodes.
-		// First, remove the attribute from the attribute list.
-		attributeList.remove(new Integer(selectedAttribute));
-		for (int j = 0; j < numValues; j++) {
-			splitNode(node.children[j], attributeList);
+		// Each child has its own copy of the attribute list, without the attribute
+		// used here, so siblings never see each other's splits.
+		for (Node child : node.children) {
+			splitNode(child, child.attributeList);
+		}
+	}
+
+	/**
+	 * Moves a split node's rows into its children in a single pass. Every page
+	 * is read once, and each row goes straight into its child's buffer, which
+	 * pages itself out as it fills, so a k-way split costs one read of the
+	 * node instead of k. Rows still in the node's heap are handed over the
+	 * same way. The node's pages are deleted afterwards, so only leaves hold
+	 * pages and the disk holds each row once however deep the tree is.
+	 * @param node A node with its split attribute and children set.
+	 * @throws IOException If a page can't be read. The node is then a leaf
+	 * again, with all of its rows.
+	 */
+	private void partition(final Node node) throws IOException {
+		final int column = node.splitAttribute;
+		// Taken out of the buffer first, so the memory manager can't page it
+		// out from under the loop below.
+		ArrayList<int[]> heapRows = node.detachData();
+		String[] pages = node.dataMapper.getPages();
+		if (pages != null) {
+			boolean scanned = false;
+			try {
+				scanPages(pages, new RowVisitor() {
+					public void visit(int[] row) {
+						// Scanners reuse the row array.
+						node.childFor(row[column]).addAndCompressData(row.clone());
+					}
+				});
+				scanned = true;
+			} finally {
+				if (!scanned) {
+					// The pages are untouched, so with its heap rows back the
+					// node has all of its rows again, as a leaf.
+					node.removeChildren();
+					node.restoreData(heapRows);
+				}
+			}
 		}
+		for (int[] row : heapRows) {
+			node.childFor(row[column]).addAndCompressData(row);
+		}
+		node.dataMapper.deletePages();
 	}
 
 	/**
@@ -272,26 +438,29 @@ public class BigDataDecisionTree {
 	 */
 	public int readData(String fileName) throws IOException {
 
-		FileInputStream in = null;
+		ChunkedLoader loader = null;
 		try {
-			File inputFile = new File(fileName);
-			in = new FileInputStream(inputFile);
+			loader = new ChunkedLoader(fileName, loadThreads);
 		} catch ( Exception e) {
 			System.err.println( "Unable to open data file: " + 
 					fileName + "\n" + e);
 			return 0;
 		}
+		try {
+			return readData(fileName, loader);
+		} finally {
+			loader.close();
+		}
+	}
 
-		BufferedReader bin = new BufferedReader(new InputStreamReader(in));
-
+	private int readData(String fileName, ChunkedLoader loader) throws IOException {
 		String input;
 
 		// Read the first line;
-		input = bin.readLine();
+		input = loader.readHeader();
 		if (input == null) {
 			System.err.println( "No data found in the data file: " + 
 					fileName + "\n");
-			bin.close();
 			return 0;
 		}
 
@@ -302,13 +471,9 @@ public class BigDataDecisionTree {
 			System.err.println("Could not obtain the names of attributes.");
 			System.err.println("Expecting at least one input attribute and " +
 					"one output attribute");
-			bin.close();
 			return 0;
 		}
 
-		// Intialize the mapper with the right number of columns.
-		root.dataMapper = new DataMapper(root, numAttributes);
-
 		// Provide the text for our column titles, for a
 		// clean output, and add it to our dataMapper.
 		String[] attNames = new String[numAttributes];
@@ -316,45 +481,622 @@ public class BigDataDecisionTree {
 			attNames[i]  = tokenizer.nextToken();
 		}
 		
-		DataMapper.setColumnNames(attNames);
+		context = new TreeContext(pageDirectory, memoryBudget);
+		try {
+			context.createPageDirectory();
+		} catch (IOException e) {
+			System.err.println("Unable to make a directory for pages in " + pageDirectory + ": " + e);
+			return 0;
+		}
+		context.setColumnNames(attNames);
+		context.setClassValues(classColumn, positiveClassValue, negativeClassValue);
+
+		// Intialize the mapper with the right number of columns.
+		root.dataMapper = new DataMapper(context, root, numAttributes);
+		pageScanner = memoryMappedPages ? new MappedPageScanner(numAttributes)
+				: new BinaryPageScanner(numAttributes);
+
+		// Rows are parsed on several threads but arrive here in file order.
+		boolean complete = loader.load(context.dictionaries, new ChunkedLoader.RowSink() {
+			public void add(int[] row) {
+				// Send to our root's mapper, which pages it out as it grows.
+				root.addAndCompressData(row);
+			}
+		});
+		if (!complete) {
+			System.err.println( "Read " + root.getNumOfInstances() + " data");
+			System.err.println( "Last line read: " + loader.getBadLine());
+			System.err.println( "Expecting " + numAttributes  + " attributes");
+			return 0;
+		}
+		return 1;
+	}
+
+	/**
+	 * Takes the place of {@link #readData(String)} for data spread over
+	 * several {@link ShardWorker} processes. Each worker loads and pages its
+	 * own shard; this process only keeps counts. The next
+	 * {@link #createDecisionTree()} then builds the tree level-wise across the
+	 * workers: each level, every worker counts its rows into the frontier at
+	 * the same time, and the counts are added up here to choose the splits.
+	 * The tree is the same as one built level-wise from all of the shards in
+	 * one file. Like any level-wise tree it has no pages here, so
+	 * {@link #updateData(String)} refuses to update it.
+	 * @param workers The address of every worker.
+	 * @return A status code of 0 means failure; 1 means success.
+	 */
+	public int readShards(List<InetSocketAddress> workers) {
+		try {
+			shards = new ShardCoordinator(workers);
+			context = new TreeContext(pageDirectory, memoryBudget);
+			numAttributes = shards.open(context, classColumn, positiveClassValue, negativeClassValue);
+			root.dataMapper = new DataMapper(context, root, numAttributes);
+			shards.countRoot(root);
+		} catch (IOException e) {
+			System.err.println("Unable to load the shards: " + e);
+			if (shards != null) {
+				shards.close();
+				shards = null;
+			}
+			return 0;
+		}
+		return 1;
+	}
+
+	public void createDecisionTree() {
+		ArrayList<Integer> splitAttributes = new ArrayList<Integer>();
+		for(int i = 0; i < numAttributes; i++) {
+			splitAttributes.add(i);
+		}
+		if (shards != null) {
+			buildSharded(Collections.unmodifiableList(splitAttributes));
+			leafPages = false;
+		} else if (levelWise) {
+			buildLevelWise(Collections.unmodifiableList(splitAttributes));
+			leafPages = false;
+		} else {
+			splitNode(root, splitAttributes);
+			leafPages = true;
+		}
+		compiledTree = compile();
+	}
+
+	/**
+	 * Builds the tree breadth-first. The frontier is the list of nodes on the
+	 * deepest level so far, and every row of the root is assigned to the
+	 * frontier node it has reached. Each round decides the split of every
+	 * frontier node from its counts, then makes one scan of the root's pages
+	 * that moves every row down to the child it belongs to, counting it there.
+	 * @param splitAttributes Every column, the class column included.
+	 */
+	private void buildLevelWise(List<Integer> splitAttributes) {
+		String[] pages = root.getAllPages();
+		if (pages == null) {
+			return;
+		}
+		root.attributeList = splitAttributes;
+		// The index, in the frontier, of the node each row has reached; -1 once
+		// that node is a leaf.
+		int[] assignment = new int[root.getNumOfInstances()];
+		ArrayList<Node> frontier = new ArrayList<Node>();
+		frontier.add(root);
+		int depth = 0;
+
+		while (!frontier.isEmpty()) {
+			ArrayList<Node> nextFrontier = splitFrontier(frontier);
+			if (nextFrontier.isEmpty()) {
+				break;
+			}
+
+			// One scan moves every row down a level.
+			LevelScan scan = new LevelScan(frontier, assignment);
+			try {
+				scanPages(pages, scan);
+			} catch (IOException e) {
+				System.err.println("Unable to read the pages of the root at depth " + depth + ": " + e);
+				for (Node node : frontier) {
+					node.removeChildren();
+				}
+				return;
+			}
+			frontier = nextFrontier;
+			depth++;
+		}
+		System.out.println("Built " + (depth + 1) + " levels with " + depth + " scans of the data.");
+	}
+
+	/**
+	 * Builds the tree level-wise from counts gathered by the shard workers.
+	 * Each round decides the split of every frontier node here, then has
+	 * every worker move its rows down a level and count them.
+	 * @param splitAttributes Every column, the class column included.
+	 */
+	private void buildSharded(List<Integer> splitAttributes) {
+		root.attributeList = splitAttributes;
+		ArrayList<Node> frontier = new ArrayList<Node>();
+		frontier.add(root);
+		int depth = 0;
+		try {
+			while (true) {
+				ArrayList<Node> nextFrontier = splitFrontier(frontier);
+				if (nextFrontier.isEmpty()) {
+					break;
+				}
+				try {
+					shards.countLevel(frontier, nextFrontier);
+				} catch (IOException e) {
+					System.err.println("Lost a shard worker at depth " + depth + ": " + e);
+					for (Node node : frontier) {
+						node.removeChildren();
+					}
+					return;
+				}
+				frontier = nextFrontier;
+				depth++;
+			}
+			System.out.println("Built " + (depth + 1) + " levels with " + depth + " scans of "
+					+ shards.size() + " shards.");
+		} finally {
+			shards.close();
+			shards = null;
+		}
+	}
+
+	/**
+	 * Splits what can be split on one level of a level-wise build, from the
+	 * counts alone.
+	 * @param frontier The nodes on the level, with all of their rows counted.
+	 * @return The children made, in order, each with its frontierIndex set.
+	 */
+	private ArrayList<Node> splitFrontier(ArrayList<Node> frontier) {
+		ArrayList<Node> nextFrontier = new ArrayList<Node>();
+		for (Node node : frontier) {
+			int selectedAttribute = chooseLevelWiseSplit(node);
+			if (selectedAttribute < 0) {
+				continue;
+			}
+			node.splitAttribute = selectedAttribute;
+			int[] codes = node.dataMapper.valueFrequencyInColumn[selectedAttribute].keys();
+			node.children = new Node[codes.length];
+			for (int j = 0; j < codes.length; j++) {
+				node.children[j] = newChild(node, codes[j]);
+				node.children[j].frontierIndex = nextFrontier.size();
+				nextFrontier.add(node.children[j]);
+			}
+			node.indexChildren(context.getCardinality(selectedAttribute));
+		}
+		return nextFrontier;
+	}
+
+	/**
+	 * @param node A frontier node, with all of its rows counted.
+	 * @return The column to split it on, or -1 if it should be a leaf.
+	 */
+	private int chooseLevelWiseSplit(Node node) {
+		if (node.attributeList.size() == 1) {
+			return -1;
+		}
+		node.entropy = calculateEntropy(node);
+		if (node.entropy == 0.0) {
+			return -1;
+		}
+		return chooseSplit(node.dataMapper.getSplitStatistics(node.attributeList), node.attributeList);
+	}
+
+	/**
+	 * Moves each row of the root from its frontier node to the child it
+	 * belongs to, and counts it there.
+	 */
+	private static class LevelScan implements RowVisitor {
+		private final ArrayList<Node> frontier;
+		private final int[] assignment;
+		private int row;
+
+		LevelScan(ArrayList<Node> frontier, int[] assignment) {
+			this.frontier = frontier;
+			this.assignment = assignment;
+		}
+
+		public void visit(int[] values) {
+			int f = assignment[row];
+			if (f >= 0) {
+				Node node = frontier.get(f);
+				if (node.children == null) {
+					assignment[row] = -1;
+				} else {
+					Node child = node.childFor(values[node.splitAttribute]);
+					child.countData(values);
+					assignment[row] = child.frontierIndex;
+				}
+			}
+			row++;
+		}
+	}
+
+	/**
+	 * Adds newly labelled rows to the trained tree without retraining it from
+	 * scratch, in the spirit of ID5R. Each row is routed down the tree: every
+	 * node it passes through counts it, and the leaf it reaches pages it.
+	 * Afterwards only the nodes that received rows are re-scored, from their
+	 * mappers' counts: a subtree is rebuilt, from the pages of its leaves, only
+	 * where its best split has changed, and a leaf is split only if it can now
+	 * be. Only a tree built depth-first has its rows paged in its leaves, so
+	 * any other tree is refused.
+	 * @param fileName The new rows, with a header line, in the training data's column order.
+	 * @return A status code of 0 means failure; 1 means success.
+	 * @throws IOException
+	 */
+	public int updateData(String fileName) throws IOException {
+
+		if (!leafPages) {
+			System.err.println("Unable to update the tree with " + fileName
+					+ ": it was not built depth-first, so its leaves have no pages to rebuild from.");
+			return 0;
+		}
+
+		FileInputStream in = null;
+		try {
+			File inputFile = new File(fileName);
+			in = new FileInputStream(inputFile);
+		} catch ( Exception e) {
+			System.err.println( "Unable to open data file: " + 
+					fileName + "\n" + e);
+			return 0;
+		}
 
+		BufferedReader bin = new BufferedReader(new InputStreamReader(in));
+		String input = bin.readLine();
+		if (input == null || new StringTokenizer(input).countTokens() != numAttributes) {
+			System.err.println("Expecting a header line with " + numAttributes
+					+ " attributes in the data file: " + fileName);
+			bin.close();
+			return 0;
+		}
+
+		int rows = 0;
 		while (true) {
 			input = bin.readLine();
 			if (input == null) break;
-			tokenizer = new StringTokenizer(input);
-			int numtokens = tokenizer.countTokens();
-			if (numtokens != numAttributes) {
-				System.err.println( "Read " + root.localData.size() + " data");
+			StringTokenizer tokenizer = new StringTokenizer(input);
+			if (tokenizer.countTokens() != numAttributes) {
+				System.err.println( "Read " + rows + " data");
 				System.err.println( "Last line read: " + input);
 				System.err.println( "Expecting " + numAttributes  + " attributes");
 				bin.close();
 				return 0;
 			}
 
-			String[] row = new String[numAttributes];
+			int[] row = new int[numAttributes];
 			for (int i = 0; i < numAttributes; i++) {
-				row[i] = tokenizer.nextToken(); 
+				row[i] = context.encode(i, tokenizer.nextToken());
 			}
-			//TODO: make the root add&compress too.
-			// Send to our root's mapper.
-			//root.dataMapper.compress(row);
-			// Also store it locally.
-			//root.localData.add(row);
-			//root.addAndCompressData(row);
+			routeRow(row);
+			rows++;
 		}
 		bin.close();
+
+		restructure(root);
+		compiledTree = compile();
 		return 1;
 	}
 
-	public void createDecisionTree() {
+	/**
+	 * Counts a new row in every node on its path from the root, and adds it
+	 * to the leaf at the end, making a leaf for any split value the tree has
+	 * no child for yet.
+	 * @param row The row's value codes.
+	 */
+	private void routeRow(int[] row) {
+		Node node = root;
+		while (true) {
+			node.updated = true;
+			if (node.children == null) {
+				node.addAndCompressData(row);
+				return;
+			}
+			node.countData(row);
+			Node child = node.childFor(row[node.splitAttribute]);
+			if (child == null) {
+				child = newChild(node, row[node.splitAttribute]);
+				node.addChild(child);
+			}
+			node = child;
+		}
+	}
+
+	/**
+	 * Makes an empty leaf under a split node.
+	 * @param node The split node.
+	 * @param code The code, in the split column, of the value the leaf is for.
+	 * @return The leaf. The caller adds it to the node's children.
+	 */
+	private Node newChild(Node node, int code) {
+		Node child = new Node(context, numAttributes);
+		child.number = ++numNodes;
+		child.parent = node;
+		child.splitValue = context.decode(node.splitAttribute, code);
+		child.attributeList = withoutAttribute(node.attributeList, node.splitAttribute);
+		return child;
+	}
+
+	/**
+	 * Brings the updated part of a subtree back in line with its data. Nodes
+	 * that received no new rows are left alone, along with everything below them.
+	 * @param node The root of the subtree.
+	 */
+	private void restructure(Node node) {
+		if (!node.updated) {
+			return;
+		}
+		node.updated = false;
+		if (node.children == null) {
+			splitNode(node, node.attributeList);
+			return;
+		}
+
+		node.entropy = calculateEntropy(node);
+		int bestAttribute = node.entropy == 0.0 ? -1
+				: chooseSplit(node.dataMapper.getSplitStatistics(node.attributeList), node.attributeList);
+		if (bestAttribute != node.splitAttribute) {
+			// The best split moved, so this subtree is rebuilt from the node's
+			// rows, which are in the pages of its leaves.
+			node.takeLeafPages();
+			node.removeChildren();
+			if (bestAttribute >= 0) {
+				splitNode(node, node.attributeList);
+			}
+			return;
+		}
+		for (Node child : node.children) {
+			restructure(child);
+		}
+	}
+
+	/**
+	 * Trains the tree from a file in a single pass. See {@link #streamData(InputStream)}.
+	 * @param fileName The training data.
+	 * @return A status code of 0 means failure; 1 means success.
+	 * @throws IOException
+	 */
+	public int streamData(String fileName) throws IOException {
+		FileInputStream in = null;
+		try {
+			File inputFile = new File(fileName);
+			in = new FileInputStream(inputFile);
+		} catch ( Exception e) {
+			System.err.println( "Unable to open data file: " + 
+					fileName + "\n" + e);
+			return 0;
+		}
+		return streamData(in);
+	}
+
+	/**
+	 * Trains the tree from a stream in a single pass, in the manner of VFDT,
+	 * instead of {@link #readData(String)} and {@link #createDecisionTree()}.
+	 * Rows are never stored or paged; each row is only counted, by value and
+	 * class, into the mappers of the nodes on its path. Every grace period,
+	 * a leaf compares its two best columns. It splits on the best as soon as
+	 * the Hoeffding bound says it beats the runner-up for real, or the two are
+	 * too close to matter. Memory grows with the size of the tree, not with the
+	 * number of rows. Trees trained this way have no pages, so
+	 * {@link #updateData(String)} refuses to update them.
+	 * @param in The training data, with a header line. Closed when done.
+	 * @return A status code of 0 means failure; 1 means success.
+	 * @throws IOException
+	 */
+	public int streamData(InputStream in) throws IOException {
+		BufferedReader bin = new BufferedReader(new InputStreamReader(in));
+		String input = bin.readLine();
+		if (input == null) {
+			System.err.println("No data found in the stream.");
+			bin.close();
+			return 0;
+		}
+		StringTokenizer tokenizer = new StringTokenizer(input);
+		numAttributes = tokenizer.countTokens();
+		if (numAttributes <= 1) {
+			System.err.println("Read line: " + input);
+			System.err.println("Could not obtain the names of attributes.");
+			bin.close();
+			return 0;
+		}
+		String[] attNames = new String[numAttributes];
+		for (int i = 0; i < numAttributes; i++) {
+			attNames[i] = tokenizer.nextToken();
+		}
+		context = new TreeContext(pageDirectory, memoryBudget);
+		context.setColumnNames(attNames);
+		context.setClassValues(classColumn, positiveClassValue, negativeClassValue);
+
 		ArrayList<Integer> splitAttributes = new ArrayList<Integer>();
-		for(int i = 0; i < numAttributes; i++) {
+		for (int i = 0; i < numAttributes; i++) {
 			splitAttributes.add(i);
 		}
-		splitNode(root, splitAttributes);
+		root.dataMapper = new DataMapper(context, root, numAttributes);
+		root.attributeList = Collections.unmodifiableList(splitAttributes);
+		leafPages = false;
+
+		long rows = 0;
+		while (true) {
+			input = bin.readLine();
+			if (input == null) break;
+			tokenizer = new StringTokenizer(input);
+			if (tokenizer.countTokens() != numAttributes) {
+				System.err.println( "Read " + rows + " data");
+				System.err.println( "Last line read: " + input);
+				System.err.println( "Expecting " + numAttributes  + " attributes");
+				bin.close();
+				return 0;
+			}
+			int[] row = new int[numAttributes];
+			for (int i = 0; i < numAttributes; i++) {
+				row[i] = context.encode(i, tokenizer.nextToken());
+			}
+
+			Node node = root;
+			node.countData(row);
+			while (node.children != null) {
+				Node child = node.childFor(row[node.splitAttribute]);
+				if (child == null) {
+					child = newChild(node, row[node.splitAttribute]);
+					node.addChild(child);
+				}
+				node = child;
+				node.countData(row);
+			}
+			if (node.getNumOfInstances() % hoeffdingGracePeriod == 0) {
+				attemptHoeffdingSplit(node);
+			}
+			rows++;
+		}
+		bin.close();
+		compiledTree = compile();
+		return 1;
+	}
+
+	/**
+	 * Splits a streaming leaf if its rows so far are enough, by the Hoeffding
+	 * bound, to be confident of the best column.
+	 */
+	private void attemptHoeffdingSplit(Node leaf) {
+		List<Integer> attributeList = leaf.attributeList;
+		if (attributeList.size() == 1) {
+			return;
+		}
+		double entropy = calculateEntropy(leaf);
+		if (entropy == 0.0) {
+			return;
+		}
+		SplitStatistics statistics = leaf.dataMapper.getSplitStatistics(attributeList);
+		int rows = statistics.getRows();
+
+		int bestAttribute = -1;
+		double bestEntropy = entropy;
+		// Not splitting at all is the runner-up to beat if there is only one column.
+		double secondEntropy = entropy;
+		for (int column : attributeList) {
+			if (column == classColumn) {
+				continue;
+			}
+			double splitEntropy = calculateSplitEntropy(statistics.getCounts(column), rows);
+			if (bestAttribute < 0 || splitEntropy < bestEntropy) {
+				secondEntropy = bestAttribute < 0 ? secondEntropy : bestEntropy;
+				bestEntropy = splitEntropy;
+				bestAttribute = column;
+			} else if (splitEntropy < secondEntropy) {
+				secondEntropy = splitEntropy;
+			}
+		}
+		if (bestAttribute < 0 || bestEntropy >= entropy) {
+			return;
+		}
+
+		// The information gain of two classes ranges over [0, 1].
+		double epsilon = Math.sqrt(Math.log(1 / hoeffdingConfidence) / (2.0 * rows));
+		if (secondEntropy - bestEntropy <= epsilon && epsilon >= hoeffdingTieThreshold) {
+			return;
+		}
+
+		leaf.splitAttribute = bestAttribute;
+		int[][] counts = statistics.getCounts(bestAttribute);
+		ArrayList<Node> children = new ArrayList<Node>();
+		for (int code = 0; code < counts.length; code++) {
+			if (counts[code][2] > 0) {
+				children.add(newChild(leaf, code));
+			}
+		}
+		leaf.children = children.toArray(new Node[children.size()]);
+		leaf.indexChildren(context.getCardinality(bestAttribute));
+	}
+
+	/**
+	 * Freezes the trained tree into flat arrays for prediction.
+	 * A leaf predicts the majority class of its rows, or of its parent's rows
+	 * if it has none, matching what printTree shows. A split node keeps the
+	 * majority class of its own rows for values it has no child for.
+	 * @return The compiled tree.
+	 */
+	public CompiledTree compile() {
+		// Number the nodes breadth-first, so every node's children are numbered after it.
+		ArrayList<Node> nodes = new ArrayList<Node>();
+		nodes.add(root);
+		int childSlots = 0;
+		for (int n = 0; n < nodes.size(); n++) {
+			Node node = nodes.get(n);
+			if (node.children != null) {
+				// Children are numbered in value code order.
+				for (Node child : node.childByCode) {
+					if (child != null) {
+						nodes.add(child);
+					}
+				}
+				childSlots += node.childByCode.length;
+			}
+		}
+
+		int[] splitColumn = new int[nodes.size()];
+		int[] childBase = new int[nodes.size()];
+		int[] childCount = new int[nodes.size()];
+		int[] childTable = new int[childSlots];
+		Arrays.fill(childTable, -1);
+		int[] nodeClass = new int[nodes.size()];
+		int nextChild = 1;
+		int nextSlot = 0;
+		for (int n = 0; n < nodes.size(); n++) {
+			Node node = nodes.get(n);
+			nodeClass[n] = majorityClassCode(node);
+			if (nodeClass[n] < 0 && node.parent != null) {
+				nodeClass[n] = majorityClassCode(node.parent);
+			}
+			if (node.children == null) {
+				splitColumn[n] = -1;
+				continue;
+			}
+			splitColumn[n] = node.splitAttribute;
+			childBase[n] = nextSlot;
+			childCount[n] = node.childByCode.length;
+			for (int code = 0; code < childCount[n]; code++) {
+				if (node.childFor(code) != null) {
+					childTable[nextSlot + code] = nextChild++;
+				}
+			}
+			nextSlot += childCount[n];
+		}
+		return new CompiledTree(splitColumn, childBase, childCount, childTable, nodeClass);
+	}
+
+	/**
+	 * @param node The node to examine.
+	 * @return The code of the node's majority class, or -1 if it has no rows or a tie.
+	 */
+	private int majorityClassCode(Node node) {
+		return context.codeOf(classColumn, majorityClass(node));
+	}
+
+	/**
+	 * Saves the trained tree in the {@link ModelFile} format, so it can be
+	 * loaded with {@link ModelFile#load} and used without retraining.
+	 * @param fileName The file to write.
+	 * @throws IOException If the file can't be written.
+	 */
+	public void saveModel(String fileName) throws IOException {
+		ModelFile.write(fileName, compiledTree, context.columnNames, context.dictionaries, classColumn);
 	}
 
 	public void classifyTestData(String testData) throws IOException {
+		classifyTestData(testData, Runtime.getRuntime().availableProcessors(), null);
+	}
+
+	/**
+	 * Classifies a test file in chunks on several threads, and prints the
+	 * accuracy and the number of rows classified per second.
+	 * @param testData The test file, with a header line like the training data.
+	 * @param threads The number of worker threads.
+	 * @param sink Receives the prediction for every row, in file order, or null.
+	 * @throws IOException If the file can't be read, or the sink fails.
+	 */
+	public void classifyTestData(String testData, int threads, PredictionSink sink) throws IOException {
 
 		FileInputStream in;
 		File inputFile = new File(testData);
@@ -364,74 +1106,69 @@ public class BigDataDecisionTree {
 		String input = bin.readLine();
 		if (input == null) {
 			System.err.println("Empty test file!");
+			in.close();
+			return;
 		}
 		StringTokenizer tokenizer = new StringTokenizer(input);
 		int numAttributes = tokenizer.countTokens();
 
 		System.out.println("Input: " + input);
 		System.out.println("Tokenized: has " + numAttributes + " columns.");
-		int instanceCount = 0;
-
-		int correctPredictions = 0;
-
-		while (true) {
-			input = bin.readLine();
-			if (input == null) {
-				break;
-			}
-
-			instanceCount++;
-			String[] testInstanceAttributes = new String[numAttributes];
-
-			tokenizer = new StringTokenizer(input);
-
-			int i = 0;
-			while (tokenizer.hasMoreTokens()) {
-				testInstanceAttributes[i] = tokenizer.nextToken();
-				i++;
-			}
-
-			// Recursive classifier.
-			correctPredictions += predict(testInstanceAttributes, root);
 
+		// Test values are encoded with the training dictionaries; values
+		// never seen in training become -1.
+		BatchClassifier.Result result;
+		try {
+			result = new BatchClassifier(compiledTree, context.dictionaries, classColumn, threads).classify(bin, sink);
+		} finally {
+			in.close();
 		}
+		long instanceCount = result.getRows();
+		long correctPredictions = result.getCorrect();
+
 		System.out.println("" + correctPredictions + " instances predicted correctly, and " +
 				(instanceCount - correctPredictions) + " incorrectly classified, out of "
 				+ instanceCount + " test instances.");
 		System.out.println("Accuracy: " + correctPredictions + "/" + instanceCount + " == " + (double) correctPredictions / instanceCount);
-		in.close();
+		System.out.println("Classified " + instanceCount + " rows on " + threads + " threads at "
+				+ (long) result.getRowsPerSecond() + " rows/sec.");
 	}
 
-	private int predict(String[] testInstanceAttributes, Node currentNode) {
+	/**
+	 * Scores a range of the candidate columns of one node, splitting the range
+	 * in half until each task holds a single column.
+	 */
+	class ColumnScoringTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final SplitStatistics statistics;
+		private final List<Integer> attributeList;
+		private final double[] splitEntropies;
+		private final int from;
+		private final int to;
 
-		int attributeForSplitting = currentNode.splitAttribute;
-		Node nextChild = new Node();
-		if (attributeForSplitting == -1) {
+		ColumnScoringTask(SplitStatistics statistics, List<Integer> attributeList,
+				double[] splitEntropies, int from, int to) {
+			this.statistics = statistics;
+			this.attributeList = attributeList;
+			this.splitEntropies = splitEntropies;
+			this.from = from;
+			this.to = to;
+		}
 
-			// Return the classification count for this node,
-			// cause this is as good as it gets.
-			String result = currentNode.getMajorityClass(
-					classColumn, positiveClassValue, negativeClassValue);
-			return result.equals(testInstanceAttributes[classColumn]) ? 1 : 0;
-		} else {
-			// Figure out what attribute this node's children are split on.
-			// Recurse in the child node for this instance's value of that
-			// attribute.
-			String testInstanceSplitValue = testInstanceAttributes[attributeForSplitting];
-			boolean valueFound = false;
-			for (int i = 0; i < currentNode.children.length; i++) {
-				if (currentNode.children[i].splitValue.equals(testInstanceSplitValue)) {
-					valueFound = true;
-					nextChild = currentNode.children[i];
-					break;
-				}
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ColumnScoringTask(statistics, attributeList, splitEntropies, from, middle),
+						new ColumnScoringTask(statistics, attributeList, splitEntropies, middle, to));
+				return;
 			}
-			if (!valueFound) {
-				System.out.println("There was a problem: the value split on during testing"
-						+ " does not exist as a child node!");
+			int column = attributeList.get(from);
+			if (column != classColumn) {
+				splitEntropies[from] = calculateSplitEntropy(statistics.getCounts(column), statistics.getRows());
 			}
 		}
-		return predict(testInstanceAttributes, nextChild);
 	}
 
 	public int getClassColumn() {
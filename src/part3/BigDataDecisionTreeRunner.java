@@ -1,8 +1,11 @@
 package part3;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 
 public class BigDataDecisionTreeRunner {
@@ -13,15 +16,16 @@ public class BigDataDecisionTreeRunner {
 
 		// If we're at a leaf print out the class.
 		if (node.children == null) {
-			ArrayList<String> values = tree.getAllValuesInColumn(node.localData, outputAttribute);
+			// The node's rows may be paged out, so ask its mapper.
+			String[] values = node.getValuesForColumn(outputAttribute);
 
 			// If we know the class then print it, otherwise, print the majority
 			// of the parent.
-			if (values.size() == 1) {
-				System.out.println(tab + "  " + DataMapper.getColumnTitle(outputAttribute) + 
-						" = \"" + values.get(0) + "\";");
+			if (values.length == 1 && !"".equals(values[0])) {
+				System.out.println(tab + "  " + tree.context.getColumnTitle(outputAttribute) + 
+						" = \"" + values[0] + "\";");
 			} else {
-				System.out.print(tab + "  " +DataMapper.getColumnTitle(outputAttribute) + " = {");
+				System.out.print(tab + "  " +tree.context.getColumnTitle(outputAttribute) + " = {");
 				System.out.print(tree.majorityClass(node.parent));
 				System.out.println( " };");
 			}
@@ -29,18 +33,16 @@ public class BigDataDecisionTreeRunner {
 		}
 		// If we're not at a leaf, call printTree on each child.
 		int numValues = node.children.length;
-		int i = 0;
-		for (String attributeValue : node.dataMapper.getValuesFor(node.splitAttribute)) {
+		for (int i = 0; i < numValues; i++) {
 			System.out.println(tab + "if ( " + 
-					DataMapper.getColumnTitle(node.splitAttribute) + " == \"" +
-					attributeValue + "\") {" );
+					tree.context.getColumnTitle(node.splitAttribute) + " == \"" +
+					node.children[i].splitValue + "\") {" );
 			printTree(tree, node.children[i], tab + "  ");
 			if (i != numValues - 1 ) {
 				System.out.print(tab +  "} else ");
 			} else {
 				System.out.println(tab +  "}");
 			}
-			i++;
 		}
 	}
 
@@ -134,6 +136,19 @@ public class BigDataDecisionTreeRunner {
 		}
 	}
 	
+	/**
+	 * @param shardList Worker addresses, as host:port, separated by commas.
+	 * @return The addresses.
+	 */
+	private static List<InetSocketAddress> parseShards(String shardList) {
+		List<InetSocketAddress> workers = new ArrayList<InetSocketAddress>();
+		for (String worker : shardList.split(",")) {
+			int colon = worker.lastIndexOf(':');
+			workers.add(new InetSocketAddress(worker.substring(0, colon), Integer.parseInt(worker.substring(colon + 1))));
+		}
+		return workers;
+	}
+
 	public static void main(String[] args) throws Exception {
 		Scanner in = new Scanner(System.in);
 		int colNum;
@@ -143,8 +158,13 @@ public class BigDataDecisionTreeRunner {
 
 		help();
 
-		System.out.print("Input file: ");
-		str = readInputFile(in);
+		// -Dshards=host:port,... trains on ShardWorker processes instead of a local file.
+		String shardList = System.getProperty("shards");
+		str = null;
+		if (shardList == null) {
+			System.out.print("Input file: ");
+			str = readInputFile(in);
+		}
 
 		System.out.println("Enter the column number for the class:");
 		colNum = readColumnNumber(in);
@@ -154,9 +174,13 @@ public class BigDataDecisionTreeRunner {
 		negVal = readNegativeValue(in);
 
 		BigDataDecisionTree myID3 = new BigDataDecisionTree(colNum, posVal, negVal);
+		// An optional argument scores split candidates on that many threads.
+		if (args.length > 0) {
+			myID3.setSplitPool(new ForkJoinPool(Integer.parseInt(args[0])));
+		}
 		int status = 0;
 		try {
-			status = myID3.readData(str);
+			status = shardList == null ? myID3.readData(str) : myID3.readShards(parseShards(shardList));
 		} catch (IOException e) {
 			System.err.println("Error when trying to read data! Is this the right"
 					+ " file path?" + "\n" + e);
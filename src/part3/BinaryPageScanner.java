@@ -0,0 +1,70 @@
+package part3;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads pages written in {@link PageFormat}, through a file channel and a
+ * fixed-size buffer. Rows are decoded into one reused array, so scanning
+ * allocates nothing per row.
+ */
+class BinaryPageScanner implements PageScanner {
+
+	private final int numAttributes;
+
+	/**
+	 * @param numAttributes The number of columns in every row.
+	 */
+	BinaryPageScanner(int numAttributes) {
+		this.numAttributes = numAttributes;
+	}
+
+	public void scan(String page, RowVisitor visitor) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(page), StandardOpenOption.READ);
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(
+					Math.max(PageFormat.BUFFER_SIZE, PageFormat.headerSize(numAttributes)));
+			// Start out empty, with nothing left to read.
+			buffer.flip();
+			int[] widths = new int[numAttributes];
+			fill(channel, buffer, PageFormat.headerSize(numAttributes), page);
+			int rows = PageFormat.readHeader(buffer, page, numAttributes, widths);
+			int rowWidth = 0;
+			for (int width : widths) {
+				rowWidth += width;
+			}
+
+			int[] row = new int[numAttributes];
+			for (int r = 0; r < rows; r++) {
+				if (buffer.remaining() < rowWidth) {
+					fill(channel, buffer, rowWidth, page);
+				}
+				for (int i = 0; i < numAttributes; i++) {
+					row[i] = PageFormat.getCode(buffer, widths[i]);
+				}
+				visitor.visit(row);
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Keeps the unread bytes of the buffer and reads until at least the
+	 * needed number of bytes are available.
+	 */
+	private static void fill(FileChannel channel, ByteBuffer buffer, int needed, String page)
+			throws IOException {
+		buffer.compact();
+		while (buffer.position() < needed) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException(page + " ends in the middle of a row.");
+			}
+		}
+		buffer.flip();
+	}
+}
@@ -0,0 +1,163 @@
+package part3;
+
+import java.util.Arrays;
+
+/**
+ * Counts occurrences of int keys, such as the value codes of one column,
+ * without boxing. Keys live in an open-addressing table with linear probing,
+ * so counting a key that is already present allocates nothing. The table
+ * may also keep, for every key, a count per class.
+ */
+class CountTable {
+
+	private static final int EMPTY = -1;
+
+	/**
+	 * Ints kept per slot: the total, then one count per class.
+	 */
+	private final int stride;
+	private int[] keys;
+	private int[] counts;
+	private int size;
+	private int mask;
+
+	/**
+	 * @param expectedKeys How many distinct keys to make room for up front.
+	 * @param classes How many classes to count per key, or 0 for totals only.
+	 */
+	CountTable(int expectedKeys, int classes) {
+		stride = 1 + classes;
+		allocate(capacityFor(Math.max(expectedKeys, 1)));
+	}
+
+	private static int capacityFor(int keys) {
+		// Keep the table at most half full.
+		return Integer.highestOneBit(keys * 2 - 1) << 1;
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		counts = new int[capacity * stride];
+		mask = capacity - 1;
+	}
+
+	private int slotOf(int key) {
+		int hash = key * 0x9E3779B9;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (keys[slot] != key && keys[slot] != EMPTY) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Finds the slot for a key, claiming one if the key is new.
+	 */
+	private int claimSlot(int key) {
+		int slot = slotOf(key);
+		if (keys[slot] == EMPTY) {
+			if ((size + 1) * 2 > keys.length) {
+				rehash(keys.length * 2);
+				slot = slotOf(key);
+			}
+			keys[slot] = key;
+			size++;
+		}
+		return slot;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldCounts = counts;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int slot = slotOf(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				System.arraycopy(oldCounts, i * stride, counts, slot * stride, stride);
+			}
+		}
+	}
+
+	/**
+	 * Counts one occurrence of a key.
+	 * @param key A non-negative key.
+	 */
+	void increment(int key) {
+		// Claim first: claiming may replace the counts array.
+		int base = claimSlot(key) * stride;
+		counts[base]++;
+	}
+
+	/**
+	 * Counts one occurrence of a key together with a class.
+	 * @param key A non-negative key.
+	 * @param classIndex The class, from 0, or -1 to count the total only.
+	 */
+	void increment(int key, int classIndex) {
+		int base = claimSlot(key) * stride;
+		counts[base]++;
+		if (classIndex >= 0) {
+			counts[base + 1 + classIndex]++;
+		}
+	}
+
+	/**
+	 * Adds several occurrences of a key at once, such as counts made elsewhere.
+	 * @param key A non-negative key.
+	 * @param classIndex The class, from 0, or -1 to add to the total.
+	 * @param count How many occurrences to add.
+	 */
+	void add(int key, int classIndex, int count) {
+		int base = claimSlot(key) * stride;
+		counts[base + 1 + classIndex] += count;
+	}
+
+	/**
+	 * @param key The key to look up.
+	 * @return How many times it was counted; 0 if never.
+	 */
+	int get(int key) {
+		if (key < 0) {
+			return 0;
+		}
+		int slot = slotOf(key);
+		return keys[slot] == EMPTY ? 0 : counts[slot * stride];
+	}
+
+	/**
+	 * @param key The key to look up.
+	 * @param classIndex The class, from 0.
+	 * @return How many times it was counted with that class; 0 if never.
+	 */
+	int get(int key, int classIndex) {
+		if (key < 0) {
+			return 0;
+		}
+		int slot = slotOf(key);
+		return keys[slot] == EMPTY ? 0 : counts[slot * stride + 1 + classIndex];
+	}
+
+	/**
+	 * @return The number of distinct keys counted.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return Every key counted, in ascending order.
+	 */
+	int[] keys() {
+		int[] present = new int[size];
+		int n = 0;
+		for (int key : keys) {
+			if (key != EMPTY) {
+				present[n++] = key;
+			}
+		}
+		Arrays.sort(present);
+		return present;
+	}
+}
@@ -1,12 +1,10 @@
 package part3;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -15,7 +13,8 @@ import java.util.Set;
  * to more efficiently use large test sets that can't fit in the heap
  * as complete objects.
  * 
- * This class does not use threads.
+ * Pages are written in the background by the page writer of the tree's
+ * {@link TreeContext}; everything else happens on the caller's thread.
  * 
  * @author Rachel Kawula rkawula@gmail.com
  *
@@ -23,9 +22,9 @@ import java.util.Set;
 class DataMapper {
 
 	/**
-	 * Array of column numbers to names.
+	 * The codes, class values and page directory of the tree the node is in.
 	 */
-	static String[] columnNames;
+	final TreeContext context;
 
 	/**
 	 * The node that this datamapper belongs to, and is responsible for.
@@ -38,71 +37,95 @@ class DataMapper {
 	ArrayList<String> pagedData = new ArrayList<String>();
 	
 	/**
-	 * Holds the number of times that this value occurred within this column,
-	 * across all instances. ie if column 5 has contained "e" 3 times and "q" 5 times:
-	 * valueFrequencyInColumn[5].get("e") == 3
-	 * valueFrequencyInColumn[5].get("q") == 5
+	 * Holds the number of times that each value occurred within each column,
+	 * across all instances, keyed by the value's code, in total and with each
+	 * class (0 for positive, 1 for negative). ie if column 5 has contained "e"
+	 * 3 times and "q" 5 times, and "e" was positive twice:
+	 * valueFrequencyInColumn[5].get(codeOf(5, "e")) == 3
+	 * valueFrequencyInColumn[5].get(codeOf(5, "q")) == 5
+	 * valueFrequencyInColumn[5].get(codeOf(5, "e"), 0) == 2
+	 * Together these are the (column, value, class) counts that a split is
+	 * chosen from, so choosing one never reads the node's pages.
 	 */
-	HashMap<String, Integer>[] valueFrequencyInColumn;
+	CountTable[] valueFrequencyInColumn;
 	/**
 	 * Makes a new mapper.
+	 * @param context The tree the node is in.
+	 * @param mapped The node.
 	 * @param columns The number of columns that are in the dataset.
 	 */
-	public DataMapper(Node mapped, int columns) {
+	public DataMapper(TreeContext context, Node mapped, int columns) {
+		this.context = context;
 		mappedNode = mapped;
-		valueFrequencyInColumn = new HashMap[columns];
+		valueFrequencyInColumn = new CountTable[columns];
 		for (int i = 0; i < columns; i++) {
-			valueFrequencyInColumn[i] = new HashMap<String, Integer>();
+			// Sized for every value seen so far, so most rows never grow a table.
+			valueFrequencyInColumn[i] = new CountTable(context.getCardinality(i), 2);
 		}
 	}
 
 	/**
 	 * Given a set of attributes for this data set, the mapper will compress the
-	 * values by mapping column number to string value to frequency.
+	 * values by counting how often each value code occurs in each column, in
+	 * total and with the row's class.
+	 * This allocates nothing once a column's table holds all of its values.
 	 * 
 	 * @param attributes An array that has the index representing the column number,
-	 * set to contain the value discovered in that column for this instance of the
-	 * data set.
+	 * set to contain the code of the value discovered in that column for this
+	 * instance of the data set.
 	 */
-	public void compress(String[] attributes) {
+	public void compress(int[] attributes) {
+		int classCode = attributes[context.classColumn];
+		int classIndex = classCode == context.positiveClassCode ? 0
+				: classCode == context.negativeClassCode ? 1 : -1;
 		for (int i = 0; i < valueFrequencyInColumn.length; i++) {
-			if (valueFrequencyInColumn[i] == null) {
-				valueFrequencyInColumn[i] = new HashMap<String, Integer>();
-			}
-			// If this column's value for the instance is already in our hashmap,
-			// increment the frequency. Otherwise, add it with frequency of 1.
-			String key = attributes[i];
-			if (valueFrequencyInColumn[i].containsKey(key)) {
-				int frequency = valueFrequencyInColumn[i].get(key);
-				valueFrequencyInColumn[i].put(key, frequency + 1);
-			} else {
-				valueFrequencyInColumn[i].put(key, 1);
-			}
+			valueFrequencyInColumn[i].increment(attributes[i], classIndex);
 		}
 	}
 
 	/**
-	 * Sets the names of the columns for the dataset.
-	 * @param colNames The names, from left to right, read in
-	 * from the dataset. The left-most column begins at 0.
+	 * Gathers the counts for choosing this node's split.
+	 * @param candidates The columns that may be split on.
+	 * @return The value-by-class counts of those columns, over all of the node's rows.
 	 */
-	public static void setColumnNames(String[] colNames) {
-		columnNames = colNames;
+	SplitStatistics getSplitStatistics(List<Integer> candidates) {
+		SplitStatistics statistics = new SplitStatistics(context, candidates);
+		for (int column : candidates) {
+			CountTable counts = valueFrequencyInColumn[column];
+			for (int code : counts.keys()) {
+				statistics.add(column, code, counts.get(code, 0), counts.get(code, 1), counts.get(code));
+			}
+		}
+		statistics.addRows(mappedNode.getNumOfInstances());
+		return statistics;
 	}
 
 	/**
-	 * Gets the label for the column in the dataset.
-	 * @param column The number for the column. Counting begins at the
-	 * left-most column, as 0.
-	 * @return The name of that column.
+	 * Adds counts of a value that were made elsewhere, such as by a shard
+	 * worker, as if this mapper had compressed the rows itself.
+	 * @param column The column number.
+	 * @param code The value's code.
+	 * @param total How many rows hold the value.
+	 * @param positive How many of them have the positive class.
+	 * @param negative How many of them have the negative class.
 	 */
-	public static String getColumnTitle(int column) {
-		return columnNames[column];
+	void addCounts(int column, int code, int total, int positive, int negative) {
+		CountTable counts = valueFrequencyInColumn[column];
+		counts.add(code, -1, total);
+		counts.add(code, 0, positive);
+		counts.add(code, 1, negative);
 	}
 
+	/**
+	 * @param currentColumn The column number.
+	 * @return Every value this node has seen in that column, in code order.
+	 */
 	public Set<String> getValuesFor(int currentColumn) {
-		Set<String> keys = valueFrequencyInColumn[currentColumn].keySet();
-		return keys == null ? new HashSet<String>() : keys;
+		Set<String> values = new LinkedHashSet<String>();
+		for (int code : valueFrequencyInColumn[currentColumn].keys()) {
+			values.add(context.decode(currentColumn, code));
+		}
+		return values;
 	}
 
 	/**
@@ -114,63 +137,88 @@ class DataMapper {
 	 */
 	String getMajorityClass(int classColumn, String positive, String negative) {
 
-		HashMap<String, Integer> map = valueFrequencyInColumn[classColumn];
-		if (map == null || map.isEmpty()) {
+		CountTable counts = valueFrequencyInColumn[classColumn];
+		if (counts.size() == 0) {
 			return "Empty set?!";
 		}
-		if (map.containsKey(positive) && map.containsKey(negative)) {
-			int posFreq = valueFrequencyInColumn[classColumn].get(positive);
-			int negFreq = valueFrequencyInColumn[classColumn].get(negative);
+		int posFreq = counts.get(context.codeOf(classColumn, positive));
+		int negFreq = counts.get(context.codeOf(classColumn, negative));
+		if (posFreq > 0 && negFreq > 0) {
 			// How to handle this case????? Entropy == 1.0
 			if (posFreq == negFreq) {
 				return "Tie!";
 			}
 			return posFreq > negFreq ? positive : negative;
 		}
-		if (map.containsKey(positive)) {
+		if (posFreq > 0) {
 			return positive;
 		}
 		return negative;
 
 	}
 
-	private static String formatDataAsRows(ArrayList<String[]> data) {
-		StringBuilder sb = new StringBuilder();
-		for (String[] row : data) {
-			for (int i = 0; i < row.length; i++) {
-				sb.append(row[i] + " ");
-			}
-			sb.append("\n");
-		}
-		return sb.toString();
-	}
-
-	String writeDataToDisk(ArrayList<String[]> data) {
+	/**
+	 * Queues rows to be written to a new page for this node, in {@link PageFormat}.
+	 * Blocks if the page writer is too far behind. The page can be read once
+	 * {@link PageWriter#flush()} returns.
+	 * @param data The rows to write. The mapper takes ownership of the list.
+	 * @return The file name of the page.
+	 */
+	String writeDataToDisk(ArrayList<int[]> data) {
 		// Take chunks of data at a time.
 		// Append it to a growing file.
 		int pageNumber = pagedData.size();
-		PrintWriter writer = null;
-		String fileName = "node_data" + File.separator + "Node" + mappedNode.number + "_part" + pageNumber + ".txt";
+		String fileName = context.pagePath("Node" + mappedNode.number + "_part" + pageNumber + ".page");
+		int[] widths = new int[valueFrequencyInColumn.length];
+		for (int i = 0; i < widths.length; i++) {
+			widths[i] = PageFormat.widthFor(context.getCardinality(i));
+		}
 		try {
-			writer = new PrintWriter(fileName, "UTF-8");
-			writer.append(formatDataAsRows(data));
-		} catch (UnsupportedEncodingException e) {
+			context.pageWriter.write(fileName, data, widths);
+		} catch (IOException e) {
 			System.err.println("Bad news when writing to file: " + e);
-		} catch (FileNotFoundException e) {
-			System.err.println("For some reason this file wasn't found. . ?" + e);
-		} finally {
-			writer.close();
 		}
 		pagedData.add(fileName);
 		return fileName;
 	}
 	
+	/**
+	 * Deletes every page this mapper has written, for nodes that are no longer
+	 * in the tree or whose rows have moved to their children.
+	 */
+	void deletePages() {
+		try {
+			// A page still in the queue would be written after it was deleted.
+			context.pageWriter.flush();
+		} catch (IOException e) {
+			// These pages are being thrown away; a failed write doesn't matter here.
+		}
+		for (String page : pagedData) {
+			new File(page).delete();
+		}
+		pagedData.clear();
+	}
+
+	/**
+	 * Takes over the pages of another mapper, which is left with none.
+	 * @param other The mapper of a node whose rows now belong to this one.
+	 */
+	void takePages(DataMapper other) {
+		pagedData.addAll(other.pagedData);
+		other.pagedData.clear();
+	}
+
 	String[] getPages() {
 		return pagedData.size() > 0 ? pagedData.toArray(new String[pagedData.size()]) : null;
 	}
 	
+	/**
+	 * @param column The column number.
+	 * @param value The value.
+	 * @return How many of this node's rows hold that value in that column; 0 if none.
+	 */
 	int getWordFrequency(int column, String value) {
-		return valueFrequencyInColumn[column].get(value);
+		return valueFrequencyInColumn[column].get(context.codeOf(column, value));
 	}
 
 
@@ -0,0 +1,73 @@
+package part3;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads pages written in {@link PageFormat} by memory-mapping them and
+ * decoding rows straight from the mapped bytes. Nothing is copied through
+ * the heap, and a page scanned more than once (statistics, then partitioning)
+ * is served from the operating system's page cache.
+ * 
+ * Pages larger than a single mapping can cover are mapped a region at a time,
+ * each region holding whole rows.
+ */
+class MappedPageScanner implements PageScanner {
+
+	/**
+	 * The most bytes mapped at once.
+	 */
+	private static final long MAX_REGION = 1L << 30;
+
+	private final int numAttributes;
+
+	/**
+	 * @param numAttributes The number of columns in every row.
+	 */
+	MappedPageScanner(int numAttributes) {
+		this.numAttributes = numAttributes;
+	}
+
+	public void scan(String page, RowVisitor visitor) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(page), StandardOpenOption.READ);
+		try {
+			int headerSize = PageFormat.headerSize(numAttributes);
+			if (channel.size() < headerSize) {
+				throw new IOException(page + " is too short to be a node page.");
+			}
+			int[] widths = new int[numAttributes];
+			int rows = PageFormat.readHeader(channel.map(FileChannel.MapMode.READ_ONLY, 0, headerSize),
+					page, numAttributes, widths);
+			int rowWidth = 0;
+			for (int width : widths) {
+				rowWidth += width;
+			}
+			if (channel.size() < headerSize + (long) rows * rowWidth) {
+				throw new IOException(page + " ends in the middle of a row.");
+			}
+
+			int[] row = new int[numAttributes];
+			long rowsPerRegion = Math.max(1, MAX_REGION / Math.max(1, rowWidth));
+			long position = headerSize;
+			for (long first = 0; first < rows; first += rowsPerRegion) {
+				long regionRows = Math.min(rowsPerRegion, rows - first);
+				MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY,
+						position, regionRows * rowWidth);
+				for (long r = 0; r < regionRows; r++) {
+					for (int i = 0; i < numAttributes; i++) {
+						row[i] = PageFormat.getCode(region, widths[i]);
+					}
+					visitor.visit(row);
+				}
+				position += regionRows * rowWidth;
+			}
+		} finally {
+			// The mappings stay valid after the channel is closed, and are
+			// released once they are no longer reachable.
+			channel.close();
+		}
+	}
+}
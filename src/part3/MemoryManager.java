@@ -0,0 +1,117 @@
+package part3;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decides when node buffers are paged out, so training uses the memory it
+ * is given and no more. Every row held in a node's buffer is charged an
+ * estimated number of bytes, worked out from the number of columns. When the
+ * buffers together go over their share of the budget, the largest buffers
+ * are paged out until they are back under half of it.
+ *
+ * Buffers get half of the budget. The other half is the write budget of the
+ * {@link PageWriter}, which keeps rows charged until they are on disk and
+ * makes writers wait for room, and which also pays for its spare buffers.
+ * A spare buffer handed to a node is charged again as the node's rows fill
+ * it; only nodes being paged out are handed one, and they fill it again.
+ * 
+ * Not thread safe: rows are added, and pages queued, on the training thread.
+ */
+class MemoryManager {
+
+	private final Set<Node> bufferingNodes = new HashSet<Node>();
+	private long budget = Runtime.getRuntime().maxMemory() / 2;
+	private long rowBytes = 8;
+	private long limitRows = budget / 2 / rowBytes;
+	private long bufferedRows;
+
+	/**
+	 * @param bytes How much memory node buffers and pages being written may use in all.
+	 */
+	void setBudget(long bytes) {
+		if (bytes <= 0) {
+			throw new IllegalArgumentException("The memory budget must be positive.");
+		}
+		budget = bytes;
+		limitRows = Math.max(1, budget / 2 / rowBytes);
+	}
+
+	long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * @return How much memory rows waiting to be written, and spare buffers, may use.
+	 */
+	long getWriteBudget() {
+		return budget - budget / 2;
+	}
+
+	/**
+	 * @return The estimated size of a row, its place in a buffer included.
+	 */
+	long getRowBytes() {
+		return rowBytes;
+	}
+
+	/**
+	 * Sets the size of the rows being buffered, once the tree knows its columns.
+	 * @param columns The number of columns in every row.
+	 */
+	void setColumns(int columns) {
+		// An int[] is a 16 byte header and its values, rounded up to 8 bytes,
+		// plus the reference to it in the buffer and the buffer's spare room.
+		rowBytes = ((16 + 4L * columns + 7) & ~7L) + 8;
+		limitRows = Math.max(1, budget / 2 / rowBytes);
+	}
+
+	/**
+	 * Charges a row that was just added to a node's buffer, paging out
+	 * buffers if that puts them over the budget.
+	 * @param node The node whose buffer grew by one row.
+	 */
+	void added(Node node) {
+		added(node, 1);
+	}
+
+	/**
+	 * Charges rows that were just put in a node's buffer all at once.
+	 * @param node The node whose buffer grew.
+	 * @param rows The number of rows added.
+	 */
+	void added(Node node, int rows) {
+		bufferingNodes.add(node);
+		bufferedRows += rows;
+		if (bufferedRows > limitRows) {
+			spill();
+		}
+	}
+
+	/**
+	 * Stops charging for a node's buffer, when it is emptied some other way.
+	 * Call before the buffer is emptied.
+	 * @param node The node.
+	 */
+	void removed(Node node) {
+		if (bufferingNodes.remove(node)) {
+			bufferedRows -= node.localData.size();
+		}
+	}
+
+	/**
+	 * Pages out the largest buffers until the buffers are back under half of their share.
+	 */
+	private void spill() {
+		while (bufferedRows > limitRows / 2 && !bufferingNodes.isEmpty()) {
+			Node largest = null;
+			for (Node node : bufferingNodes) {
+				if (largest == null || node.localData.size() > largest.localData.size()) {
+					largest = node;
+				}
+			}
+			removed(largest);
+			largest.pageOut();
+		}
+	}
+}
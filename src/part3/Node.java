@@ -1,6 +1,8 @@
 package part3;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
 
@@ -14,7 +16,7 @@ class Node {
 	double entropy; 
 
 	// Data temporarily loaded into the heap.
-	ArrayList<String[]> localData = new ArrayList<String[]>();
+	ArrayList<int[]> localData = new ArrayList<int[]>();
 
 	// If this isn't a leaf node, the attribute used to divide the node.
 	// -1 means that this node is a leaf.
@@ -29,7 +31,21 @@ class Node {
 	String splitValue;
 
 	Node[] children;
+
+	// The same children, indexed by the code of their splitValue in the
+	// parent's splitAttribute column. null where no child has that value.
+	Node[] childByCode;
+
 	Node parent;	
+
+	// The columns this node may still be split on, including the class column.
+	List<Integer> attributeList;
+
+	// Whether rows have been added since the tree was last built or updated.
+	boolean updated;
+
+	// Where this node sits in the frontier of a level-wise build.
+	int frontierIndex;
 	// Holds useful statistics in the heap, so you don't need to go to disk.
 	DataMapper dataMapper;
 	//Total instances in this node.
@@ -40,14 +56,86 @@ class Node {
 		number = 1;
 	}
 
-	Node(int numAttributes) {
-		dataMapper = new DataMapper(this, numAttributes);
+	Node(TreeContext context, int numAttributes) {
+		dataMapper = new DataMapper(context, this, numAttributes);
 	}
 	
 	public void setNumber(int num) {
 		number = num;
 	}
 
+	/**
+	 * Builds the code-indexed view of the children, once they all have their splitValue.
+	 * @param cardinality The number of distinct values in the split column.
+	 */
+	void indexChildren(int cardinality) {
+		childByCode = new Node[cardinality];
+		for (Node child : children) {
+			childByCode[dataMapper.context.codeOf(splitAttribute, child.splitValue)] = child;
+		}
+	}
+
+	/**
+	 * Finds the child for a value of the split column in constant time.
+	 * @param code The value's code in the split column, or -1 if it was never seen.
+	 * @return The child, or null if there is none for that value, in which
+	 * case the caller should fall back to this node's majority class.
+	 */
+	Node childFor(int code) {
+		if (code < 0 || code >= childByCode.length) {
+			return null;
+		}
+		return childByCode[code];
+	}
+
+	/**
+	 * Adds a child for a split value that had none, such as a value first
+	 * seen after the tree was built.
+	 * @param child The new child, with its splitValue set.
+	 */
+	void addChild(Node child) {
+		children = Arrays.copyOf(children, children.length + 1);
+		children[children.length - 1] = child;
+		indexChildren(dataMapper.context.getCardinality(splitAttribute));
+	}
+
+	/**
+	 * Gives this split node the rows of every leaf below it, paging out what
+	 * the leaves still hold in the heap and taking over their pages. A split
+	 * node's own pages are deleted once its rows are in its children, so this
+	 * is how it gets them back before its subtree is rebuilt.
+	 */
+	void takeLeafPages() {
+		if (children == null) {
+			return;
+		}
+		for (Node child : children) {
+			if (child.children == null) {
+				child.getAllPages();
+			} else {
+				child.takeLeafPages();
+			}
+			dataMapper.takePages(child.dataMapper);
+		}
+	}
+
+	/**
+	 * Turns this node back into a leaf, deleting the pages of everything below it.
+	 */
+	void removeChildren() {
+		if (children == null) {
+			return;
+		}
+		for (Node child : children) {
+			child.removeChildren();
+			child.detachData();
+			child.dataMapper.deletePages();
+		}
+		children = null;
+		childByCode = null;
+		splitAttribute = -1;
+	}
+
 	public String getMajorityClass(int column, String pos, String neg) {
 		return dataMapper.getMajorityClass(column, pos, neg);
 	}
@@ -60,27 +148,81 @@ class Node {
 		return values.toArray(new String[values.size()]);
 	}
 
-	public void addAndCompressData(String[] data) {
+	/**
+	 * Counts a row into this node's statistics without keeping the row,
+	 * for trees that are trained from a stream.
+	 * @param data The row's value codes.
+	 */
+	void countData(int[] data) {
+		dataMapper.compress(data);
+		instances++;
+	}
+
+	/**
+	 * Counts rows that were counted into this node's statistics elsewhere,
+	 * such as by a shard worker.
+	 * @param rows The number of rows.
+	 */
+	void addCountedRows(int rows) {
+		instances += rows;
+	}
+
+	public void addAndCompressData(int[] data) {
 		localData.add(data);
 		dataMapper.compress(data);
-		if (localData.size() >= 500000) {
-			String fileName = dataMapper.writeDataToDisk(localData);
-			System.out.println("Paged 500,000 rows to " + fileName + ".");
-			localData.clear();
-			System.gc();
-		}
 		instances++;
+		// May page this node, or others, out.
+		dataMapper.context.memoryManager.added(this);
+	}
+
+	/**
+	 * Hands the rows in this node's buffer to the page writer, which writes
+	 * them in the background while rows go into another buffer. Called by the
+	 * {@link MemoryManager} when buffers are over budget.
+	 */
+	void pageOut() {
+		int rows = localData.size();
+		String fileName = dataMapper.writeDataToDisk(localData);
+		System.out.println("Paged " + rows + " rows to " + fileName + ".");
+		localData = dataMapper.context.pageWriter.takeBuffer();
+	}
+
+	/**
+	 * Takes the rows out of this node's buffer, leaving it empty. The node
+	 * gets a new, empty buffer rather than a spare one, which it may never
+	 * fill again.
+	 * @return The rows, which the caller now owns.
+	 */
+	ArrayList<int[]> detachData() {
+		dataMapper.context.memoryManager.removed(this);
+		ArrayList<int[]> rows = localData;
+		localData = new ArrayList<int[]>();
+		return rows;
 	}
 	
+	/**
+	 * Gives back rows taken with {@link #detachData()} that were not moved
+	 * anywhere after all. They were counted when they first arrived, so they
+	 * are not counted again.
+	 * @param rows The rows.
+	 */
+	void restoreData(ArrayList<int[]> rows) {
+		if (rows.isEmpty()) {
+			return;
+		}
+		localData.addAll(rows);
+		dataMapper.context.memoryManager.added(this, rows.size());
+	}
+
 	/**
 	 * Gets a list of filenames for the all of the data in this node.
+	 * Pages may still be being written; see {@link PageWriter#flush()}.
 	 * @return A list of the files for this node's data. May return an
 	 * empty array if there is no data.
 	 */
 	public String[] getAllPages() {
 		if (!localData.isEmpty()) {
-			dataMapper.writeDataToDisk(localData);
-			localData.clear();
+			dataMapper.writeDataToDisk(detachData());
 		}
 		return dataMapper.getPages();
 	}
@@ -0,0 +1,169 @@
+package part3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * The binary layout of a node's data page.
+ * 
+ * A page starts with a header:
+ * <pre>
+ * int   MAGIC
+ * byte  VERSION
+ * int   number of columns
+ * int   number of rows
+ * byte  code width, in bytes, of each column (1, 2 or 4)
+ * </pre>
+ * followed by the rows, one after another. Every row holds the dictionary
+ * code of each column, in column order, at that column's width. All values
+ * are big-endian.
+ */
+final class PageFormat {
+
+	/**
+	 * "ID3P"
+	 */
+	static final int MAGIC = 0x49443350;
+	static final byte VERSION = 1;
+
+	/**
+	 * Size of the buffer pages are written and read through.
+	 */
+	static final int BUFFER_SIZE = 1 << 16;
+
+	private PageFormat() {
+	}
+
+	/**
+	 * @param cardinality The number of distinct values in a column.
+	 * @return The number of bytes needed to store any of its codes.
+	 */
+	static int widthFor(int cardinality) {
+		if (cardinality <= 0x100) {
+			return 1;
+		}
+		return cardinality <= 0x10000 ? 2 : 4;
+	}
+
+	/**
+	 * @param numAttributes The number of columns.
+	 * @return The size of a page header, in bytes.
+	 */
+	static int headerSize(int numAttributes) {
+		return 4 + 1 + 4 + 4 + numAttributes;
+	}
+
+	/**
+	 * Writes rows of codes as a page.
+	 * @param fileName The page to create, or overwrite.
+	 * @param rows The rows, each holding one code per column.
+	 * @param widths The code width of each column.
+	 * @throws IOException If the page can't be written.
+	 */
+	static void write(String fileName, List<int[]> rows, int[] widths) throws IOException {
+		Path path = Paths.get(fileName);
+		if (path.getParent() != null) {
+			Files.createDirectories(path.getParent());
+		}
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, headerSize(widths.length)));
+			buffer.putInt(MAGIC);
+			buffer.put(VERSION);
+			buffer.putInt(widths.length);
+			buffer.putInt(rows.size());
+			for (int width : widths) {
+				buffer.put((byte) width);
+			}
+			int rowWidth = 0;
+			for (int width : widths) {
+				rowWidth += width;
+			}
+			for (int[] row : rows) {
+				if (buffer.remaining() < rowWidth) {
+					flush(channel, buffer);
+				}
+				for (int i = 0; i < widths.length; i++) {
+					putCode(buffer, widths[i], row[i]);
+				}
+			}
+			flush(channel, buffer);
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	static void putCode(ByteBuffer buffer, int width, int code) {
+		switch (width) {
+		case 1:
+			buffer.put((byte) code);
+			break;
+		case 2:
+			buffer.putShort((short) code);
+			break;
+		default:
+			buffer.putInt(code);
+		}
+	}
+
+	static int getCode(ByteBuffer buffer, int width) {
+		switch (width) {
+		case 1:
+			return buffer.get() & 0xFF;
+		case 2:
+			return buffer.getShort() & 0xFFFF;
+		default:
+			return buffer.getInt();
+		}
+	}
+
+	/**
+	 * Reads and checks a page header.
+	 * @param buffer Positioned at the start of the page; left just past the header.
+	 * @param page The name of the page, for error messages.
+	 * @param numAttributes The number of columns the page must have.
+	 * @return The number of rows in the page. The column widths are written into widths.
+	 * @throws IOException If this is not a page this version can read, or its header is corrupt.
+	 */
+	static int readHeader(ByteBuffer buffer, String page, int numAttributes, int[] widths) throws IOException {
+		if (buffer.getInt() != MAGIC) {
+			throw new IOException(page + " is not a node page.");
+		}
+		byte version = buffer.get();
+		if (version != VERSION) {
+			throw new IOException(page + " has page format version " + version
+					+ ", expected " + VERSION + ".");
+		}
+		int columns = buffer.getInt();
+		if (columns != numAttributes) {
+			throw new IOException(page + " has " + columns + " columns, expected " + numAttributes + ".");
+		}
+		int rows = buffer.getInt();
+		if (rows < 0) {
+			throw new IOException(page + " has " + rows + " rows.");
+		}
+		for (int i = 0; i < columns; i++) {
+			widths[i] = buffer.get();
+			if (widths[i] != 1 && widths[i] != 2 && widths[i] != 4) {
+				throw new IOException(page + " has code width " + widths[i] + " in column " + i
+						+ ", expected 1, 2 or 4.");
+			}
+		}
+		return rows;
+	}
+}
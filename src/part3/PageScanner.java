@@ -0,0 +1,17 @@
+package part3;
+
+import java.io.IOException;
+
+/**
+ * Reads the rows of a node's data pages back from disk.
+ */
+interface PageScanner {
+
+	/**
+	 * Reads every row of a page, in the order they were written.
+	 * @param page The file name of the page.
+	 * @param visitor Receives each row.
+	 * @throws IOException If the page can't be read.
+	 */
+	void scan(String page, RowVisitor visitor) throws IOException;
+}
@@ -0,0 +1,201 @@
+package part3;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes node pages on a background thread, so the training thread can go on
+ * filling a fresh buffer while the last one is written. Rows stay charged,
+ * at the {@link MemoryManager}'s estimate, until they are on disk; once the
+ * pages waiting would go over the memory manager's write budget, the next
+ * write blocks until the disk catches up. Written buffers are emptied and
+ * handed back out, so a node's buffers are reused rather than reallocated.
+ * Spare buffers are charged for the slots they keep, and are dropped when
+ * rows need the room.
+ *
+ * Pages must not be read before {@link #flush()} returns. The thread stops
+ * once it has had nothing to write for a while, and starts again with the
+ * next page, so a tree that is done with leaves no thread behind.
+ */
+class PageWriter {
+
+	// The most spare buffers kept at once.
+	private static final int MAX_SPARE_BUFFERS = 3;
+	// The size of a reference in a buffer's array.
+	private static final long SLOT_BYTES = 8;
+	// How long the thread waits for a page before it stops.
+	private static final long IDLE_MILLIS = 1000;
+
+	private final MemoryManager memoryManager;
+	private final BlockingQueue<Page> queue = new LinkedBlockingQueue<Page>();
+
+	// Guarded by this.
+	private Thread thread;
+	private int pending;
+	private long pendingBytes;
+	private final ArrayDeque<Spare> spareBuffers = new ArrayDeque<Spare>();
+	private long spareBytes;
+	private long writeBudget;
+	private IOException failure;
+
+	/**
+	 * @param memoryManager Gives the size of a row and how much memory pages waiting to be written may use.
+	 */
+	PageWriter(MemoryManager memoryManager) {
+		this.memoryManager = memoryManager;
+	}
+
+	/**
+	 * Queues rows to be written as a page, blocking while the pages already
+	 * waiting leave no room for them in the write budget. A page larger than
+	 * the whole budget is written once nothing else is waiting. The caller
+	 * must not touch the list afterwards.
+	 * @param fileName The page to create.
+	 * @param rows The rows to write.
+	 * @param widths The code width of each column.
+	 * @throws IOException If interrupted while waiting for room.
+	 */
+	void write(String fileName, ArrayList<int[]> rows, int[] widths) throws IOException {
+		long bytes = memoryManager.getRowBytes() * rows.size();
+		synchronized (this) {
+			if (thread == null) {
+				thread = new Thread(new Runnable() {
+					public void run() {
+						writePages();
+					}
+				}, "page-writer");
+				thread.setDaemon(true);
+				thread.start();
+			}
+			writeBudget = memoryManager.getWriteBudget();
+			// Spare buffers give way first, then the rows wait for earlier pages.
+			while (pendingBytes + spareBytes + bytes > writeBudget) {
+				if (!spareBuffers.isEmpty()) {
+					spareBuffers.clear();
+					spareBytes = 0;
+				} else if (pendingBytes > 0) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted while queueing " + fileName);
+					}
+				} else {
+					break;
+				}
+			}
+			pending++;
+			pendingBytes += bytes;
+		}
+		queue.add(new Page(fileName, rows, widths, bytes));
+	}
+
+	/**
+	 * @return An empty buffer for rows, reused from an earlier page if one is free.
+	 */
+	synchronized ArrayList<int[]> takeBuffer() {
+		Spare spare = spareBuffers.poll();
+		if (spare == null) {
+			return new ArrayList<int[]>();
+		}
+		spareBytes -= spare.bytes;
+		return spare.rows;
+	}
+
+	/**
+	 * Waits until every queued page is on disk.
+	 * @throws IOException If any page could not be written, now or earlier.
+	 */
+	synchronized void flush() throws IOException {
+		while (pending > 0) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for pages to be written.");
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private void writePages() {
+		while (true) {
+			Page page;
+			try {
+				page = queue.poll(IDLE_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				synchronized (this) {
+					thread = null;
+				}
+				return;
+			}
+			if (page == null) {
+				synchronized (this) {
+					// A page counted as pending is on its way into the queue.
+					if (pending == 0) {
+						thread = null;
+						return;
+					}
+				}
+				continue;
+			}
+			try {
+				PageFormat.write(page.fileName, page.rows, page.widths);
+			} catch (Throwable e) {
+				// Anything thrown is kept for flush(); the thread carries on, so
+				// the page is still counted as done and flush() can't hang.
+				synchronized (this) {
+					// Keep the first failure; the data behind later pages is incomplete anyway.
+					if (failure == null) {
+						failure = e instanceof IOException ? (IOException) e
+								: new IOException("Unable to write " + page.fileName, e);
+					}
+				}
+			}
+			// An ArrayList grows by half again, so it may have up to half as many slots to spare.
+			long slotBytes = SLOT_BYTES * (page.rows.size() + page.rows.size() / 2);
+			page.rows.clear();
+			synchronized (this) {
+				pending--;
+				pendingBytes -= page.bytes;
+				if (spareBuffers.size() < MAX_SPARE_BUFFERS
+						&& pendingBytes + spareBytes + slotBytes <= writeBudget) {
+					spareBuffers.add(new Spare(page.rows, slotBytes));
+					spareBytes += slotBytes;
+				}
+				notifyAll();
+			}
+		}
+	}
+
+	private static class Page {
+		final String fileName;
+		final ArrayList<int[]> rows;
+		final int[] widths;
+		final long bytes;
+
+		Page(String fileName, ArrayList<int[]> rows, int[] widths, long bytes) {
+			this.fileName = fileName;
+			this.rows = rows;
+			this.widths = widths;
+			this.bytes = bytes;
+		}
+	}
+
+	private static class Spare {
+		final ArrayList<int[]> rows;
+		final long bytes;
+
+		Spare(ArrayList<int[]> rows, long bytes) {
+			this.rows = rows;
+			this.bytes = bytes;
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package part3;
+
+/**
+ * Receives the rows of a node's pages, one at a time, from a {@link PageScanner}.
+ */
+interface RowVisitor {
+
+	/**
+	 * Called once for every row read.
+	 * @param row The dictionary code of each column's value, indexed by column.
+	 * The scanner reuses this array for the next row, so copy it if it has to be kept.
+	 */
+	void visit(int[] row);
+}
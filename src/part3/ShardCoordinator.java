@@ -0,0 +1,183 @@
+package part3;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The coordinator's end of the connections to a set of {@link ShardWorker}s.
+ * Every request goes out to all of the workers before any answer is read,
+ * so the workers load and scan their shards at the same time.
+ */
+class ShardCoordinator {
+
+	private final List<InetSocketAddress> addresses;
+	private final Socket[] sockets;
+	private final DataInputStream[] in;
+	private final DataOutputStream[] out;
+	private int columns;
+
+	/**
+	 * Connects to every worker.
+	 * @param workers The address of every worker.
+	 * @throws IOException If a worker can't be reached.
+	 */
+	ShardCoordinator(List<InetSocketAddress> workers) throws IOException {
+		addresses = new ArrayList<InetSocketAddress>(workers);
+		sockets = new Socket[addresses.size()];
+		in = new DataInputStream[sockets.length];
+		out = new DataOutputStream[sockets.length];
+		try {
+			for (int w = 0; w < sockets.length; w++) {
+				sockets[w] = new Socket(addresses.get(w).getAddress(), addresses.get(w).getPort());
+				sockets[w].setTcpNoDelay(true);
+				in[w] = new DataInputStream(new BufferedInputStream(sockets[w].getInputStream(), 1 << 16));
+				out[w] = new DataOutputStream(new BufferedOutputStream(sockets[w].getOutputStream(), 1 << 16));
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return The number of workers.
+	 */
+	int size() {
+		return sockets.length;
+	}
+
+	/**
+	 * Has every worker load its shard, then merges their column values into
+	 * the global dictionaries of the tree's context, which this sets up, and
+	 * tells each worker the global code of each of its values.
+	 * @param context The context of the tree being built, which gets the columns and dictionaries.
+	 * @param classColumn The class column.
+	 * @param positive The positive class value.
+	 * @param negative The negative class value.
+	 * @return The number of columns.
+	 * @throws IOException If a worker fails, or the shards don't have the same columns.
+	 */
+	int open(TreeContext context, int classColumn, String positive, String negative) throws IOException {
+		for (DataOutputStream o : out) {
+			o.writeInt(ShardProtocol.HELLO);
+			o.writeInt(classColumn);
+			o.writeUTF(positive);
+			o.writeUTF(negative);
+			o.flush();
+		}
+
+		String[] columnNames = null;
+		int[][][] globalCode = new int[sockets.length][][];
+		for (int w = 0; w < sockets.length; w++) {
+			if (!in[w].readBoolean()) {
+				throw new IOException("Worker " + addresses.get(w) + ": " + in[w].readUTF());
+			}
+			String[] names = new String[in[w].readInt()];
+			for (int column = 0; column < names.length; column++) {
+				names[column] = in[w].readUTF();
+			}
+			if (columnNames == null) {
+				columnNames = names;
+				context.setColumnNames(columnNames);
+				context.setClassValues(classColumn, positive, negative);
+			} else if (!Arrays.equals(columnNames, names)) {
+				throw new IOException("Worker " + addresses.get(w) + " has columns " + Arrays.toString(names)
+						+ ", expected " + Arrays.toString(columnNames) + ".");
+			}
+			globalCode[w] = new int[names.length][];
+			for (int column = 0; column < names.length; column++) {
+				globalCode[w][column] = new int[in[w].readInt()];
+				for (int code = 0; code < globalCode[w][column].length; code++) {
+					globalCode[w][column][code] = context.encode(column, in[w].readUTF());
+				}
+			}
+		}
+		columns = columnNames.length;
+
+		for (int w = 0; w < sockets.length; w++) {
+			for (int[] codes : globalCode[w]) {
+				out[w].writeInt(codes.length);
+				for (int code : codes) {
+					out[w].writeInt(code);
+				}
+			}
+			out[w].flush();
+		}
+		return columns;
+	}
+
+	/**
+	 * Adds every worker's counts of its whole shard to the root.
+	 * @param root The root, with an empty mapper.
+	 * @throws IOException If a worker fails.
+	 */
+	void countRoot(Node root) throws IOException {
+		List<Node> nodes = Collections.singletonList(root);
+		for (DataInputStream i : in) {
+			ShardProtocol.readCounts(i, nodes, columns);
+		}
+	}
+
+	/**
+	 * Sends the splits of a level to every worker, and adds up their counts
+	 * of the rows that reach each node on the next level.
+	 * @param frontier The nodes of the level, split or not.
+	 * @param nextFrontier Their children, each with its frontierIndex set.
+	 * @throws IOException If a worker fails.
+	 */
+	void countLevel(ArrayList<Node> frontier, ArrayList<Node> nextFrontier) throws IOException {
+		for (DataOutputStream o : out) {
+			o.writeInt(ShardProtocol.LEVEL);
+			o.writeInt(nextFrontier.size());
+			o.writeInt(frontier.size());
+			for (Node node : frontier) {
+				if (node.children == null) {
+					o.writeInt(-1);
+					continue;
+				}
+				o.writeInt(node.splitAttribute);
+				o.writeInt(node.childByCode.length);
+				for (Node child : node.childByCode) {
+					o.writeInt(child == null ? -1 : child.frontierIndex);
+				}
+			}
+			o.flush();
+		}
+		for (DataInputStream i : in) {
+			ShardProtocol.readCounts(i, nextFrontier, columns);
+		}
+	}
+
+	/**
+	 * Ends the session with every worker that is still connected, and closes the connections.
+	 */
+	void close() {
+		for (int w = 0; w < sockets.length; w++) {
+			if (sockets[w] == null) {
+				continue;
+			}
+			try {
+				if (out[w] != null) {
+					out[w].writeInt(ShardProtocol.DONE);
+					out[w].flush();
+				}
+			} catch (IOException e) {
+				// The worker is already gone.
+			}
+			try {
+				sockets[w].close();
+			} catch (IOException e) {
+				// Nothing left to do with it.
+			}
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package part3;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The messages between a coordinator and its {@link ShardWorker}s, sent with
+ * DataOutputStream over one socket per worker.
+ *
+ * A session starts with HELLO: the class column, then the positive and
+ * negative class values. The worker loads its shard and answers with whether
+ * it could (a boolean, then an error message if not), its column names and
+ * the values of every column in the order of its own codes.
+ *
+ * The coordinator merges every worker's values into one set of codes and
+ * sends each worker, per column, the global code of each of its local codes.
+ * The worker answers with the counts of its root. From then on every row
+ * count is keyed by global code.
+ *
+ * Each LEVEL carries the size of the next frontier, then for every node of
+ * the current frontier its split column, or -1 for a leaf, followed by the
+ * frontier index of its child for every global code of that column, or -1.
+ * The worker moves each of its rows down a level and answers with the counts
+ * of every node on the next frontier.
+ *
+ * Counts for a node are its number of rows, then for every column the number
+ * of values it holds, then (code, total, positive, negative) for each.
+ *
+ * DONE ends the session; the worker deletes its pages.
+ */
+final class ShardProtocol {
+
+	static final int HELLO = 1;
+	static final int LEVEL = 2;
+	static final int DONE = 3;
+
+	private ShardProtocol() {
+	}
+
+	/**
+	 * Writes the counts of one node.
+	 * @param out The stream.
+	 * @param rows The node's number of rows.
+	 * @param tables The node's counts for each column, with two classes.
+	 * @param codeMap Turns the tables' codes into global codes, per column; null if they already are.
+	 * @throws IOException If writing fails.
+	 */
+	static void writeCounts(DataOutputStream out, int rows, CountTable[] tables, int[][] codeMap)
+			throws IOException {
+		out.writeInt(rows);
+		for (int column = 0; column < tables.length; column++) {
+			CountTable counts = tables[column];
+			int[] codes = counts.keys();
+			out.writeInt(codes.length);
+			for (int code : codes) {
+				out.writeInt(codeMap == null ? code : codeMap[column][code]);
+				out.writeInt(counts.get(code));
+				out.writeInt(counts.get(code, 0));
+				out.writeInt(counts.get(code, 1));
+			}
+		}
+	}
+
+	/**
+	 * Reads the counts of a list of nodes, adding them to what the nodes have already counted.
+	 * @param in The stream.
+	 * @param nodes The nodes, in the order the counts were written.
+	 * @param columns The number of columns.
+	 * @throws IOException If reading fails.
+	 */
+	static void readCounts(DataInputStream in, List<Node> nodes, int columns) throws IOException {
+		for (Node node : nodes) {
+			node.addCountedRows(in.readInt());
+			for (int column = 0; column < columns; column++) {
+				int values = in.readInt();
+				for (int i = 0; i < values; i++) {
+					node.dataMapper.addCounts(column, in.readInt(), in.readInt(), in.readInt(), in.readInt());
+				}
+			}
+		}
+	}
+}
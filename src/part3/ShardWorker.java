@@ -0,0 +1,214 @@
+package part3;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Serves one shard of a training set to a coordinating
+ * {@link BigDataDecisionTree}, so a tree can be trained on data spread over
+ * several processes or hosts. The worker pages its shard like any root, and
+ * for each level of the tree scans its pages once, moving every row down a
+ * level and counting it by (node, column, value, class). Only the counts
+ * cross the socket; see {@link ShardProtocol}.
+ *
+ * A worker serves one session at a time, and waits for the next when one ends.
+ */
+public class ShardWorker {
+
+	private final String shardFile;
+	private final String pageDirectory;
+
+	/**
+	 * @param shardFile The worker's part of the training set, with a header line.
+	 * @param pageDirectory Where to page the shard. Workers on one host each need their own.
+	 */
+	public ShardWorker(String shardFile, String pageDirectory) {
+		this.shardFile = shardFile;
+		this.pageDirectory = pageDirectory;
+	}
+
+	/**
+	 * Serves one coordinator until it is done.
+	 * @param socket The connection from the coordinator.
+	 * @throws IOException If the connection fails or the coordinator breaks the protocol.
+	 */
+	public void serve(Socket socket) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+		if (in.readInt() != ShardProtocol.HELLO) {
+			throw new IOException("Expected a HELLO from the coordinator.");
+		}
+		int classColumn = in.readInt();
+		String positive = in.readUTF();
+		String negative = in.readUTF();
+
+		BigDataDecisionTree tree = new BigDataDecisionTree(classColumn, positive, negative);
+		tree.setPageDirectory(pageDirectory);
+		if (tree.readData(shardFile) < 1) {
+			out.writeBoolean(false);
+			out.writeUTF("Unable to load shard " + shardFile + ".");
+			out.flush();
+			return;
+		}
+		try {
+			session(tree, in, out);
+		} finally {
+			tree.root.detachData();
+			tree.root.dataMapper.deletePages();
+			tree.context.deletePageDirectory();
+		}
+	}
+
+	private void session(BigDataDecisionTree tree, DataInputStream in, DataOutputStream out) throws IOException {
+		int columns = tree.numAttributes;
+		out.writeBoolean(true);
+		out.writeInt(columns);
+		for (int column = 0; column < columns; column++) {
+			out.writeUTF(tree.context.getColumnTitle(column));
+		}
+		for (int column = 0; column < columns; column++) {
+			out.writeInt(tree.context.getCardinality(column));
+			for (int code = 0; code < tree.context.getCardinality(column); code++) {
+				out.writeUTF(tree.context.decode(column, code));
+			}
+		}
+		out.flush();
+
+		int[][] globalCode = new int[columns][];
+		for (int column = 0; column < columns; column++) {
+			globalCode[column] = new int[in.readInt()];
+			for (int code = 0; code < globalCode[column].length; code++) {
+				globalCode[column][code] = in.readInt();
+			}
+		}
+		Node root = tree.root;
+		ShardProtocol.writeCounts(out, root.getNumOfInstances(), root.dataMapper.valueFrequencyInColumn, globalCode);
+		out.flush();
+
+		String[] pages = root.getAllPages();
+		// The frontier index of the node each row has reached; -1 once it is a leaf.
+		int[] assignment = new int[root.getNumOfInstances()];
+		while (true) {
+			int command = in.readInt();
+			if (command == ShardProtocol.DONE) {
+				return;
+			}
+			if (command != ShardProtocol.LEVEL) {
+				throw new IOException("Unexpected command from the coordinator: " + command);
+			}
+			int nextFrontier = in.readInt();
+			int[] splitColumn = new int[in.readInt()];
+			int[][] childIndex = new int[splitColumn.length][];
+			for (int f = 0; f < splitColumn.length; f++) {
+				splitColumn[f] = in.readInt();
+				if (splitColumn[f] >= 0) {
+					childIndex[f] = new int[in.readInt()];
+					for (int code = 0; code < childIndex[f].length; code++) {
+						childIndex[f][code] = in.readInt();
+					}
+				}
+			}
+
+			LevelCount count = new LevelCount(tree.context, nextFrontier, assignment, splitColumn, childIndex, globalCode);
+			if (pages != null) {
+				tree.scanPages(pages, count);
+			}
+			for (int n = 0; n < nextFrontier; n++) {
+				ShardProtocol.writeCounts(out, count.rows[n], count.counts[n], null);
+			}
+			out.flush();
+		}
+	}
+
+	/**
+	 * Moves each row of the shard from its frontier node to the child it
+	 * belongs to, and counts it there by global code.
+	 */
+	private static class LevelCount implements RowVisitor {
+		private final int[] assignment;
+		private final int[] splitColumn;
+		private final int[][] childIndex;
+		private final int[][] globalCode;
+		private final int classColumn;
+		private final int positiveClassCode;
+		private final int negativeClassCode;
+		final int[] rows;
+		final CountTable[][] counts;
+		private int row;
+
+		LevelCount(TreeContext context, int nextFrontier, int[] assignment, int[] splitColumn, int[][] childIndex,
+				int[][] globalCode) {
+			int columns = globalCode.length;
+			classColumn = context.classColumn;
+			positiveClassCode = context.positiveClassCode;
+			negativeClassCode = context.negativeClassCode;
+			this.assignment = assignment;
+			this.splitColumn = splitColumn;
+			this.childIndex = childIndex;
+			this.globalCode = globalCode;
+			rows = new int[nextFrontier];
+			counts = new CountTable[nextFrontier][columns];
+			for (int n = 0; n < nextFrontier; n++) {
+				for (int column = 0; column < columns; column++) {
+					counts[n][column] = new CountTable(globalCode[column].length, 2);
+				}
+			}
+		}
+
+		public void visit(int[] values) {
+			int f = assignment[row];
+			if (f >= 0) {
+				int column = splitColumn[f];
+				int child = -1;
+				if (column >= 0) {
+					int code = globalCode[column][values[column]];
+					child = code < childIndex[f].length ? childIndex[f][code] : -1;
+				}
+				if (child >= 0) {
+					int classCode = values[classColumn];
+					int classIndex = classCode == positiveClassCode ? 0
+							: classCode == negativeClassCode ? 1 : -1;
+					CountTable[] childCounts = counts[child];
+					for (int i = 0; i < childCounts.length; i++) {
+						childCounts[i].increment(globalCode[i][values[i]], classIndex);
+					}
+					rows[child]++;
+				}
+				assignment[row] = child;
+			}
+			row++;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: ShardWorker <port> <shard file> [page directory]");
+			return;
+		}
+		int port = Integer.parseInt(args[0]);
+		String pageDirectory = args.length > 2 ? args[2] : "node_data" + File.separator + "shard" + port;
+		ShardWorker worker = new ShardWorker(args[1], pageDirectory);
+		ServerSocket server = new ServerSocket(port);
+		System.out.println("Serving " + args[1] + " on port " + port + ".");
+		try {
+			while (true) {
+				Socket socket = server.accept();
+				try {
+					worker.serve(socket);
+				} catch (IOException e) {
+					System.err.println("Session with " + socket.getRemoteSocketAddress() + " failed: " + e);
+				} finally {
+					socket.close();
+				}
+			}
+		} finally {
+			server.close();
+		}
+	}
+}
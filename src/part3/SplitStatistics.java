@@ -0,0 +1,84 @@
+package part3;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts, for every candidate column of a node, how many rows hold each value
+ * together with the positive class, the negative class, and in total. Filled
+ * by {@link DataMapper#getSplitStatistics(List)} from the counts the node
+ * already holds in the heap, so every candidate split is scored without
+ * going back to disk.
+ */
+class SplitStatistics {
+
+	/**
+	 * counts[column][code] == { positives, negatives, total }.
+	 * Null for columns that are not candidates.
+	 */
+	private final int[][][] counts;
+	private int rows;
+
+	/**
+	 * @param context The columns and dictionaries of the tree.
+	 * @param candidates The columns to keep counts for.
+	 */
+	SplitStatistics(TreeContext context, List<Integer> candidates) {
+		counts = new int[context.dictionaries.length][][];
+		for (int column : candidates) {
+			counts[column] = new int[context.getCardinality(column)][3];
+		}
+	}
+
+	/**
+	 * Adds the counts of one value of a candidate column.
+	 * @param column A candidate column.
+	 * @param code The value's code.
+	 * @param positives Rows with that value and the positive class.
+	 * @param negatives Rows with that value and the negative class.
+	 * @param total All rows with that value.
+	 */
+	void add(int column, int code, int positives, int negatives, int total) {
+		if (code >= counts[column].length) {
+			grow(column, code + 1);
+		}
+		int[] valueCounts = counts[column][code];
+		valueCounts[0] += positives;
+		valueCounts[1] += negatives;
+		valueCounts[2] += total;
+	}
+
+	/**
+	 * Adds to the row count, for counts added with {@link #add}.
+	 * @param rows The number of rows the added counts cover.
+	 */
+	void addRows(int rows) {
+		this.rows += rows;
+	}
+
+	/**
+	 * Makes room for values first seen after these statistics were made.
+	 */
+	private void grow(int column, int cardinality) {
+		int oldCardinality = counts[column].length;
+		counts[column] = Arrays.copyOf(counts[column], cardinality);
+		for (int code = oldCardinality; code < cardinality; code++) {
+			counts[column][code] = new int[3];
+		}
+	}
+
+	/**
+	 * @param column A candidate column.
+	 * @return { positives, negatives, total }, indexed by value code.
+	 */
+	int[][] getCounts(int column) {
+		return counts[column];
+	}
+
+	/**
+	 * @return The number of rows counted.
+	 */
+	int getRows() {
+		return rows;
+	}
+}
@@ -0,0 +1,166 @@
+package part3;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import common.ValueDictionary;
+
+/**
+ * What the nodes of one tree share: the names of its columns, the
+ * dictionaries its rows are encoded with, the codes of its class values, the
+ * memory manager and page writer that page its rows out, and the directory
+ * its pages go in. A {@link BigDataDecisionTree} makes a new context each
+ * time it starts reading data, so trees trained one after another never see
+ * each other's codes, buffers or pages.
+ */
+class TreeContext {
+
+	/**
+	 * Array of column numbers to names.
+	 */
+	String[] columnNames;
+
+	/**
+	 * The code of every value seen in each column. Rows are held, and paged to
+	 * disk, as these codes.
+	 */
+	ValueDictionary[] dictionaries;
+
+	/**
+	 * The column holding the class, and the codes of its positive and negative
+	 * values, so every count can be broken down by class.
+	 */
+	int classColumn;
+	int positiveClassCode;
+	int negativeClassCode;
+
+	/**
+	 * Decides when the buffers of the tree's nodes are paged out.
+	 */
+	final MemoryManager memoryManager = new MemoryManager();
+
+	/**
+	 * Writes the pages of the tree's nodes in the background.
+	 */
+	final PageWriter pageWriter = new PageWriter(memoryManager);
+
+	// The directory of this tree's pages, made inside the page directory.
+	private final String pageDirectory;
+	private File treeDirectory;
+
+	/**
+	 * @param pageDirectory The directory that pages are written to.
+	 * @param memoryBudget How much memory the tree's buffered rows may take,
+	 * pages being written included.
+	 */
+	TreeContext(String pageDirectory, long memoryBudget) {
+		this.pageDirectory = pageDirectory;
+		memoryManager.setBudget(memoryBudget);
+	}
+
+	/**
+	 * Sets the names of the columns for the dataset, and starts an empty
+	 * dictionary for each column.
+	 * @param colNames The names, from left to right, read in
+	 * from the dataset. The left-most column begins at 0.
+	 */
+	void setColumnNames(String[] colNames) {
+		columnNames = colNames;
+		memoryManager.setColumns(colNames.length);
+		dictionaries = new ValueDictionary[colNames.length];
+		for (int i = 0; i < colNames.length; i++) {
+			dictionaries[i] = new ValueDictionary();
+		}
+	}
+
+	/**
+	 * Sets which column holds the class, and its two values. The values are
+	 * added to the column's dictionary if they haven't been seen yet, so that
+	 * they have codes before any row is counted.
+	 * @param column The class column.
+	 * @param positive The positive value for the class.
+	 * @param negative The negative value for the class.
+	 */
+	void setClassValues(int column, String positive, String negative) {
+		classColumn = column;
+		positiveClassCode = encode(column, positive);
+		negativeClassCode = encode(column, negative);
+	}
+
+	/**
+	 * Finds the code for a value, adding it to the column's dictionary if needed.
+	 * @param column The column the value was read from.
+	 * @param value The value.
+	 * @return The code for that value.
+	 */
+	int encode(int column, String value) {
+		return dictionaries[column].encode(value);
+	}
+
+	/**
+	 * @param column The column the value belongs to.
+	 * @param value The value.
+	 * @return The code for that value, or -1 if it has never been seen in that column.
+	 */
+	int codeOf(int column, String value) {
+		return dictionaries[column].codeOf(value);
+	}
+
+	/**
+	 * @param column The column the code belongs to.
+	 * @param code A code handed out for that column.
+	 * @return The value the code stands for.
+	 */
+	String decode(int column, int code) {
+		return dictionaries[column].valueOf(code);
+	}
+
+	/**
+	 * @param column The column number.
+	 * @return How many distinct values have been seen in that column.
+	 */
+	int getCardinality(int column) {
+		return dictionaries[column].size();
+	}
+
+	/**
+	 * Gets the label for the column in the dataset.
+	 * @param column The number for the column. Counting begins at the
+	 * left-most column, as 0.
+	 * @return The name of that column.
+	 */
+	String getColumnTitle(int column) {
+		return columnNames[column];
+	}
+
+	/**
+	 * Makes this tree's own directory inside the page directory, so that its
+	 * page names can't clash with another tree's. The page directory is made
+	 * too if need be.
+	 * @throws IOException If the directory can't be made.
+	 */
+	void createPageDirectory() throws IOException {
+		Path parent = Files.createDirectories(Paths.get(pageDirectory));
+		treeDirectory = Files.createTempDirectory(parent, "tree").toFile();
+	}
+
+	/**
+	 * @param name The name of a page.
+	 * @return Where the page goes, in this tree's directory.
+	 */
+	String pagePath(String name) {
+		return new File(treeDirectory, name).getPath();
+	}
+
+	/**
+	 * Deletes this tree's directory, if all of its pages have been deleted.
+	 */
+	void deletePageDirectory() {
+		if (treeDirectory != null) {
+			treeDirectory.delete();
+		}
+	}
+}
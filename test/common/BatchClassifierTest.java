@@ -0,0 +1,124 @@
+package common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that {@link BatchClassifier} hands every prediction to its
+ * {@link PredictionSink} in input order, over many chunks and threads, and
+ * that each prediction is the one the saved model makes for that row.
+ */
+public class BatchClassifierTest {
+
+	private static final String PLAY = "resources/play.txt";
+	private static final String[] COLUMNS = { "outlook", "temp", "humidity", "windy", "play" };
+	private static final int CLASS_COLUMN = 4;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private CompiledTree tree;
+	private ValueDictionary[] dictionaries;
+	private MappedModel model;
+	private String[] rows;
+
+	/**
+	 * The usual tree for the play data, by hand: outlook at the root, then
+	 * humidity under sunny and windy under rainy. The root has no class, so
+	 * an outlook never seen in training gets no prediction.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		dictionaries = new ValueDictionary[] { dictionary("sunny", "overcast", "rainy"),
+				dictionary("hot", "mild", "cool"), dictionary("high", "normal"), dictionary("false", "true"),
+				dictionary("no", "yes") };
+		tree = new CompiledTree(new int[] { 0, 2, -1, 3, -1, -1, -1, -1 },
+				new int[] { 0, 3, 0, 5, 0, 0, 0, 0 },
+				new int[] { 3, 2, 0, 2, 0, 0, 0, 0 },
+				new int[] { 1, 2, 3, 4, 5, 6, 7 },
+				new int[] { -1, 0, 1, 1, 0, 1, 1, 0 });
+		File file = folder.newFile();
+		ModelFile.write(file.getPath(), tree, COLUMNS, dictionaries, CLASS_COLUMN);
+		model = ModelFile.load(file.getPath());
+
+		// Several chunks, the last one short. Variants like sunny~1 are values never seen.
+		SyntheticDataGenerator generator = new SyntheticDataGenerator(PLAY, CLASS_COLUMN);
+		generator.setCardinalityScale(2);
+		StringWriter data = new StringWriter();
+		generator.generate(data, 3 * BatchClassifier.CHUNK_SIZE + 123, 5L);
+		String[] lines = data.toString().split("\n");
+		rows = new String[lines.length - 1];
+		System.arraycopy(lines, 1, rows, 0, rows.length);
+	}
+
+	@Test
+	public void predictionsReachTheSinkInInputOrder() throws IOException {
+		for (int threads : new int[] { 1, 4 }) {
+			final List<String> predictions = new ArrayList<String>();
+			BatchClassifier.Result result = new BatchClassifier(tree, dictionaries, CLASS_COLUMN, threads)
+					.classify(reader(), new PredictionSink() {
+						public void accept(long row, String predictedClass) {
+							assertEquals(predictions.size(), row);
+							predictions.add(predictedClass);
+						}
+					});
+
+			assertEquals(rows.length, result.getRows());
+			assertEquals(rows.length, predictions.size());
+			int correct = 0;
+			int unknown = 0;
+			for (int r = 0; r < rows.length; r++) {
+				String[] row = rows[r].split(" ");
+				assertEquals(rows[r], model.predict(row), predictions.get(r));
+				if (row[CLASS_COLUMN].equals(predictions.get(r))) {
+					correct++;
+				} else if (predictions.get(r) == null) {
+					unknown++;
+				}
+			}
+			assertEquals(correct, result.getCorrect());
+			assertTrue(unknown > 0);
+		}
+	}
+
+	@Test
+	public void writerSinkWritesALinePerRow() throws IOException {
+		StringWriter out = new StringWriter();
+		new BatchClassifier(tree, dictionaries, CLASS_COLUMN, 3).classify(reader(), new WriterPredictionSink(out));
+		String[] lines = out.toString().split("\n");
+		assertEquals(rows.length, lines.length);
+		for (int r = 0; r < rows.length; r++) {
+			String predicted = model.predict(rows[r].split(" "));
+			assertEquals(rows[r], predicted == null ? "?" : predicted, lines[r]);
+		}
+	}
+
+	private BufferedReader reader() {
+		StringBuilder data = new StringBuilder();
+		for (String row : rows) {
+			data.append(row).append('\n');
+		}
+		return new BufferedReader(new StringReader(data.toString()));
+	}
+
+	private static ValueDictionary dictionary(String... values) {
+		ValueDictionary dictionary = new ValueDictionary();
+		for (String value : values) {
+			dictionary.encode(value);
+		}
+		return dictionary;
+	}
+}
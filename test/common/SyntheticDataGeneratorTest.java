@@ -0,0 +1,88 @@
+package common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Checks the files {@link SyntheticDataGenerator} makes from the play data:
+ * that they can be made again from the same seed, and that extra columns
+ * and values are named as documented.
+ */
+public class SyntheticDataGeneratorTest {
+
+	private static final String PLAY = "resources/play.txt";
+
+	@Test
+	public void theSameSeedGivesTheSameRows() throws IOException {
+		SyntheticDataGenerator generator = new SyntheticDataGenerator(PLAY, 4);
+		String first = generate(generator, 500, 7L);
+		assertEquals(first, generate(generator, 500, 7L));
+		assertEquals(first, generate(new SyntheticDataGenerator(PLAY, 4), 500, 7L));
+		assertFalse(first.equals(generate(generator, 500, 8L)));
+	}
+
+	@Test
+	public void seedColumnsAreKeptByDefault() throws IOException {
+		String[] lines = generate(new SyntheticDataGenerator(PLAY, 4), 100, 1L).split("\n");
+		assertEquals(101, lines.length);
+		assertEquals("outlook temp humidity windy play", lines[0]);
+		Set<String> outlooks = new HashSet<String>();
+		for (int i = 1; i < lines.length; i++) {
+			String[] row = lines[i].split(" ");
+			assertEquals(5, row.length);
+			assertTrue(row[4], row[4].equals("yes") || row[4].equals("no"));
+			outlooks.add(row[0]);
+		}
+		assertEquals(3, outlooks.size());
+	}
+
+	@Test
+	public void extraColumnsRepeatTheSeedColumns() throws IOException {
+		SyntheticDataGenerator generator = new SyntheticDataGenerator(PLAY, 4);
+		generator.setColumns(10);
+		assertEquals(4, generator.getOutputClassColumn());
+		String[] lines = generate(generator, 100, 1L).split("\n");
+		assertEquals("outlook temp humidity windy play outlook_2 temp_2 humidity_2 windy_2 outlook_3", lines[0]);
+		for (int i = 1; i < lines.length; i++) {
+			assertEquals(10, lines[i].split(" ").length);
+		}
+
+		// Too few columns for the class's own place puts it last.
+		generator.setColumns(3);
+		assertEquals(2, generator.getOutputClassColumn());
+		assertEquals("outlook temp play", generate(generator, 1, 1L).split("\n")[0]);
+	}
+
+	@Test
+	public void cardinalityScaleMakesVariantsOfEveryValue() throws IOException {
+		SyntheticDataGenerator generator = new SyntheticDataGenerator(PLAY, 4);
+		generator.setCardinalityScale(3);
+		String[] lines = generate(generator, 1000, 1L).split("\n");
+		Set<String> outlooks = new HashSet<String>();
+		Set<String> classes = new HashSet<String>();
+		for (int i = 1; i < lines.length; i++) {
+			String[] row = lines[i].split(" ");
+			assertTrue(row[0], row[0].matches("(sunny|overcast|rainy)(~[12])?"));
+			outlooks.add(row[0]);
+			classes.add(row[4]);
+		}
+		assertEquals(9, outlooks.size());
+		// The class keeps its own values.
+		assertEquals(2, classes.size());
+		assertTrue(classes.contains("yes") && classes.contains("no"));
+	}
+
+	private static String generate(SyntheticDataGenerator generator, long rows, long seed) throws IOException {
+		StringWriter out = new StringWriter();
+		generator.generate(out, rows, seed);
+		return out.toString();
+	}
+}
@@ -0,0 +1,105 @@
+package part1;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import common.MappedModel;
+import common.ModelFile;
+
+/**
+ * Checks that the ways of building a tree in part1 all build the same tree.
+ * Trees are compared through the model files they save.
+ */
+public class DecisionTreeTest {
+
+	private static final String PLAY = "resources/play.txt";
+	private static final String MUSHROOM = "resources/simple_mushroom.txt";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void bitmapIndexBuildsTheSameTree() throws IOException {
+		assertArrayEquals(train(PLAY, 4, "yes", "no", false, null), train(PLAY, 4, "yes", "no", true, null));
+		assertArrayEquals(train(MUSHROOM, 0, "e", "p", false, null), train(MUSHROOM, 0, "e", "p", true, null));
+	}
+
+	@Test
+	public void parallelBuildsTheSameTree() throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertArrayEquals(train(PLAY, 4, "yes", "no", false, null), train(PLAY, 4, "yes", "no", false, pool));
+			assertArrayEquals(train(MUSHROOM, 0, "e", "p", false, null), train(MUSHROOM, 0, "e", "p", false, pool));
+			assertArrayEquals(train(MUSHROOM, 0, "e", "p", false, null), train(MUSHROOM, 0, "e", "p", true, pool));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void loadThreadsDontChangeTheTree() throws IOException {
+		DecisionTree single = new DecisionTree(0, "e", "p");
+		single.setLoadThreads(1);
+		DecisionTree several = new DecisionTree(0, "e", "p");
+		several.setLoadThreads(4);
+		assertArrayEquals(train(single, MUSHROOM), train(several, MUSHROOM));
+	}
+
+	@Test
+	public void mushroomTreeFitsItsTrainingData() throws IOException {
+		File model = folder.newFile();
+		Files.write(model.toPath(), train(MUSHROOM, 0, "e", "p", false, null));
+		MappedModel mapped = ModelFile.load(model.getPath());
+		BufferedReader in = new BufferedReader(new FileReader(MUSHROOM));
+		try {
+			in.readLine();
+			String line;
+			int rows = 0;
+			int correct = 0;
+			while ((line = in.readLine()) != null) {
+				String[] row = line.trim().split("\\s+");
+				rows++;
+				if (row[0].equals(mapped.predict(row))) {
+					correct++;
+				}
+			}
+			assertEquals(7108, rows);
+			assertEquals(rows, correct);
+		} finally {
+			in.close();
+		}
+	}
+
+	private byte[] train(String fileName, int classColumn, String positive, String negative,
+			boolean bitmapIndex, ForkJoinPool pool) throws IOException {
+		DecisionTree tree = new DecisionTree(classColumn, positive, negative);
+		tree.setBitmapIndex(bitmapIndex);
+		if (pool != null) {
+			tree.setSplitPool(pool);
+			tree.setSubtreePool(pool, 1);
+		}
+		return train(tree, fileName);
+	}
+
+	/**
+	 * @return The bytes of the model file of the tree trained on the file.
+	 */
+	private byte[] train(DecisionTree tree, String fileName) throws IOException {
+		assertEquals(1, tree.readData(fileName));
+		tree.createDecisionTree();
+		File model = folder.newFile();
+		tree.saveModel(model.getPath());
+		return Files.readAllBytes(model.toPath());
+	}
+}
@@ -0,0 +1,301 @@
+package part3;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import common.MappedModel;
+import common.ModelFile;
+import common.PredictionSink;
+import common.SyntheticDataGenerator;
+
+/**
+ * Checks that the ways of building a tree in part3 all build the same tree,
+ * that updating a tree gives the tree that retraining on all of the data
+ * would, and that streamed trees come close. Small memory budgets make the
+ * trees page their rows out.
+ */
+public class BigDataDecisionTreeTest {
+
+	private static final String PLAY = "resources/play.txt";
+	private static final String MUSHROOM = "resources/simple_mushroom.txt";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void levelWiseAndMappedBuildTheSameTree() throws IOException {
+		byte[] play = save(train(PLAY, 4, "yes", "no", false, false, 1 << 20));
+		assertArrayEquals(play, save(train(PLAY, 4, "yes", "no", true, false, 1 << 20)));
+		assertArrayEquals(play, save(train(PLAY, 4, "yes", "no", false, true, 1 << 20)));
+
+		for (long budget : new long[] { 1 << 16, 1 << 26 }) {
+			byte[] mushroom = save(train(MUSHROOM, 0, "e", "p", false, false, budget));
+			assertArrayEquals(mushroom, save(train(MUSHROOM, 0, "e", "p", true, false, budget)));
+			assertArrayEquals(mushroom, save(train(MUSHROOM, 0, "e", "p", false, true, budget)));
+			assertArrayEquals(mushroom, save(train(MUSHROOM, 0, "e", "p", true, true, budget)));
+		}
+	}
+
+	@Test
+	public void loadThreadsDontChangeTheTree() throws IOException {
+		// Large enough for the loader to split into several chunks.
+		SyntheticDataGenerator generator = new SyntheticDataGenerator(MUSHROOM, 0);
+		generator.setNoise(0);
+		File data = folder.newFile();
+		Writer out = new BufferedWriter(new FileWriter(data));
+		try {
+			generator.generate(out, 200000, 3L);
+		} finally {
+			out.close();
+		}
+
+		byte[][] models = new byte[2][];
+		int[] threads = { 1, 4 };
+		for (int i = 0; i < threads.length; i++) {
+			BigDataDecisionTree tree = new BigDataDecisionTree(0, "e", "p");
+			tree.setPageDirectory(folder.newFolder().getPath());
+			tree.setMemoryBudget(1 << 22);
+			tree.setLoadThreads(threads[i]);
+			assertEquals(1, tree.readData(data.getPath()));
+			tree.createDecisionTree();
+			models[i] = save(tree);
+		}
+		assertArrayEquals(models[0], models[1]);
+	}
+
+	@Test
+	public void updateDataMatchesRetraining() throws IOException {
+		List<String> lines = Files.readAllLines(new File(MUSHROOM).toPath());
+		File first = write(lines.get(0), lines.subList(1, 4001));
+		File second = write(lines.get(0), lines.subList(4001, lines.size()));
+		for (long budget : new long[] { 1 << 16, 1 << 26 }) {
+			assertUpdateMatchesRetraining(0, "e", "p", first, second, budget);
+		}
+	}
+
+	@Test
+	public void updateDataMatchesRetrainingWhenALeafSplits() throws IOException {
+		File training = write("x y c", concat(lines("a p yes", 20), lines("b p no", 40)));
+		File update = write("x y c", lines("a q no", 21));
+		assertUpdateMatchesRetraining(2, "yes", "no", training, update, 1 << 10);
+	}
+
+	@Test
+	public void updateDataMatchesRetrainingWhenTheRootChanges() throws IOException {
+		// Splitting on y becomes better than splitting on x.
+		File training = write("x y c", concat(lines("a p yes", 20), lines("b p no", 20)));
+		File update = write("x y c", concat(lines("a q no", 60), lines("b q no", 60)));
+		assertUpdateMatchesRetraining(2, "yes", "no", training, update, 1 << 10);
+	}
+
+	@Test
+	public void updateDataRefusesTreesWithoutLeafPages() throws IOException {
+		File update = write("x y c", lines("a q no", 21));
+		File data = write("x y c", concat(lines("a p yes", 20), lines("b p no", 40)));
+
+		BigDataDecisionTree levelWise = train(data.getPath(), 2, "yes", "no", true, false, 1 << 20);
+		byte[] before = save(levelWise);
+		assertEquals(0, levelWise.updateData(update.getPath()));
+		assertArrayEquals(before, save(levelWise));
+
+		BigDataDecisionTree streamed = new BigDataDecisionTree(2, "yes", "no");
+		streamed.setPageDirectory(folder.newFolder().getPath());
+		assertEquals(1, streamed.streamData(data.getPath()));
+		assertEquals(0, streamed.updateData(update.getPath()));
+	}
+
+	@Test
+	public void streamedMushroomTreeIsAccurate() throws IOException {
+		BigDataDecisionTree streamed = new BigDataDecisionTree(0, "e", "p");
+		assertEquals(1, streamed.streamData(MUSHROOM));
+		MappedModel model = load(save(streamed));
+		List<String> lines = Files.readAllLines(new File(MUSHROOM).toPath());
+		int correct = 0;
+		for (String line : lines.subList(1, lines.size())) {
+			String[] row = line.trim().split("\\s+");
+			if (row[0].equals(model.predict(row))) {
+				correct++;
+			}
+		}
+		// About 98.6% with the default parameters.
+		double accuracy = (double) correct / (lines.size() - 1);
+		assertTrue("Accuracy " + accuracy, accuracy > 0.98);
+	}
+
+	@Test
+	public void streamShorterThanTheGracePeriodLeavesOneLeaf() throws IOException {
+		File data = write("x y c", concat(lines("a p yes", 75), lines("b p no", 75)));
+		BigDataDecisionTree streamed = new BigDataDecisionTree(2, "yes", "no");
+		assertEquals(1, streamed.streamData(data.getPath()));
+		assertEquals(1, load(save(streamed)).size());
+
+		// The same rows split once a leaf may try to.
+		streamed = new BigDataDecisionTree(2, "yes", "no");
+		streamed.setHoeffdingParameters(1e-7, 0.05, 50);
+		assertEquals(1, streamed.streamData(data.getPath()));
+		assertEquals(3, load(save(streamed)).size());
+	}
+
+	@Test
+	public void aFailedSplitKeepsTheNodesRows() throws IOException {
+		BigDataDecisionTree tree = new BigDataDecisionTree(0, "e", "p");
+		tree.setPageDirectory(folder.newFolder().getPath());
+		tree.setMemoryBudget(1 << 16);
+		assertEquals(1, tree.readData(MUSHROOM));
+		tree.context.pageWriter.flush();
+		int heapRows = tree.root.localData.size();
+		String[] pages = tree.root.dataMapper.getPages();
+		assertTrue(heapRows > 0 && pages.length > 1);
+
+		// The last page can't be read, so the root can't be split.
+		new FileWriter(pages[pages.length - 1]).close();
+		tree.createDecisionTree();
+
+		assertEquals(null, tree.root.children);
+		assertEquals(7108, tree.root.getNumOfInstances());
+		assertEquals(heapRows, tree.root.localData.size());
+		assertArrayEquals(pages, tree.root.dataMapper.getPages());
+		for (String page : pages) {
+			assertTrue(page, new File(page).exists());
+		}
+	}
+
+	@Test
+	public void trainingAnotherTreeLeavesTheFirstAlone() throws IOException {
+		List<String> lines = Files.readAllLines(new File(MUSHROOM).toPath());
+		File first = write(lines.get(0), lines.subList(1, 4001));
+		File second = write(lines.get(0), lines.subList(4001, lines.size()));
+		String pages = folder.newFolder().getPath();
+
+		BigDataDecisionTree mushroom = train(first.getPath(), 0, "e", "p", false, false, 1 << 16, pages);
+		byte[] before = save(mushroom);
+		// Other columns and values, paged to the same directory.
+		train(PLAY, 4, "yes", "no", false, false, 1 << 10, pages);
+
+		assertArrayEquals(before, save(mushroom));
+		assertPredictsItsClass(mushroom, first, 0);
+		assertEquals(1, mushroom.updateData(second.getPath()));
+		assertPredictsItsClass(mushroom, new File(MUSHROOM), 0);
+	}
+
+	/**
+	 * Checks that the tree, through its own dictionaries, predicts the class of every row of the file.
+	 */
+	private void assertPredictsItsClass(BigDataDecisionTree tree, File file, int classColumn) throws IOException {
+		final List<String> predictions = new ArrayList<String>();
+		tree.classifyTestData(file.getPath(), 2, new PredictionSink() {
+			public void accept(long row, String predictedClass) {
+				predictions.add(predictedClass);
+			}
+		});
+		List<String> lines = Files.readAllLines(file.toPath());
+		assertEquals(lines.size() - 1, predictions.size());
+		for (int i = 1; i < lines.size(); i++) {
+			assertEquals(lines.get(i), lines.get(i).trim().split("\\s+")[classColumn], predictions.get(i - 1));
+		}
+	}
+
+	private void assertUpdateMatchesRetraining(int classColumn, String positive, String negative,
+			File first, File second, long budget) throws IOException {
+		BigDataDecisionTree updated = train(first.getPath(), classColumn, positive, negative, false, false, budget);
+		assertEquals(1, updated.updateData(second.getPath()));
+		MappedModel updatedModel = load(save(updated));
+
+		List<String> firstLines = Files.readAllLines(first.toPath());
+		List<String> secondLines = Files.readAllLines(second.toPath());
+		File both = write(firstLines.get(0), concat(firstLines.subList(1, firstLines.size()),
+				secondLines.subList(1, secondLines.size())));
+		MappedModel retrainedModel = load(save(train(both.getPath(), classColumn, positive, negative, false, false, budget)));
+
+		assertEquals(retrainedModel.size(), updatedModel.size());
+		BufferedReader in = new BufferedReader(new FileReader(both));
+		try {
+			in.readLine();
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] row = line.trim().split("\\s+");
+				assertEquals(line, retrainedModel.predict(row), updatedModel.predict(row));
+				assertEquals(line, row[classColumn], updatedModel.predict(row));
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private BigDataDecisionTree train(String fileName, int classColumn, String positive, String negative,
+			boolean levelWise, boolean mapped, long budget) throws IOException {
+		return train(fileName, classColumn, positive, negative, levelWise, mapped, budget, folder.newFolder().getPath());
+	}
+
+	private BigDataDecisionTree train(String fileName, int classColumn, String positive, String negative,
+			boolean levelWise, boolean mapped, long budget, String pageDirectory) throws IOException {
+		BigDataDecisionTree tree = new BigDataDecisionTree(classColumn, positive, negative);
+		tree.setPageDirectory(pageDirectory);
+		tree.setMemoryBudget(budget);
+		tree.setLevelWise(levelWise);
+		tree.setMemoryMappedPages(mapped);
+		assertEquals(1, tree.readData(fileName));
+		tree.createDecisionTree();
+		return tree;
+	}
+
+	/**
+	 * @return The bytes of the tree's model file.
+	 */
+	private byte[] save(BigDataDecisionTree tree) throws IOException {
+		File model = folder.newFile();
+		tree.saveModel(model.getPath());
+		return Files.readAllBytes(model.toPath());
+	}
+
+	private MappedModel load(byte[] model) throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), model);
+		return ModelFile.load(file.getPath());
+	}
+
+	private File write(String header, List<String> rows) throws IOException {
+		File file = folder.newFile();
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			out.println(header);
+			for (String row : rows) {
+				out.println(row);
+			}
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static List<String> lines(String line, int count) {
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			lines.add(line);
+		}
+		return lines;
+	}
+
+	private static List<String> concat(List<String> first, List<String> second) {
+		List<String> lines = new ArrayList<String>(first);
+		lines.addAll(second);
+		return lines;
+	}
+}
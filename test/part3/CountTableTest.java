@@ -0,0 +1,62 @@
+package part3;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link CountTable} keeps every count through the rehashes of
+ * a table that starts far too small.
+ */
+public class CountTableTest {
+
+	private static final int KEYS = 1000;
+
+	@Test
+	public void countsSurviveRehashing() {
+		CountTable table = new CountTable(1, 2);
+		int[] expectedKeys = new int[KEYS];
+		for (int k = 0; k < KEYS; k++) {
+			// Spread out, so keys collide and probe.
+			int key = k * 7919;
+			expectedKeys[k] = key;
+			for (int i = 0; i <= k % 5; i++) {
+				table.increment(key, k % 2);
+			}
+			table.increment(key, -1);
+			table.add(key, -1, 10);
+			table.add(key, 1, 3);
+		}
+
+		assertEquals(KEYS, table.size());
+		assertArrayEquals(expectedKeys, table.keys());
+		for (int k = 0; k < KEYS; k++) {
+			int key = k * 7919;
+			int classCount = k % 5 + 1;
+			assertEquals(classCount + 1 + 10, table.get(key));
+			assertEquals(k % 2 == 0 ? classCount : 0, table.get(key, 0));
+			assertEquals(k % 2 == 1 ? classCount + 3 : 3, table.get(key, 1));
+		}
+		assertEquals(0, table.get(1));
+		assertEquals(0, table.get(1, 0));
+		assertEquals(0, table.get(-1));
+	}
+
+	@Test
+	public void totalsOnly() {
+		CountTable table = new CountTable(4, 0);
+		for (int k = KEYS - 1; k >= 0; k--) {
+			for (int i = 0; i < k % 3 + 1; i++) {
+				table.increment(k);
+			}
+		}
+		assertEquals(KEYS, table.size());
+		int[] keys = table.keys();
+		for (int k = 0; k < KEYS; k++) {
+			assertEquals(k, keys[k]);
+			assertEquals(k % 3 + 1, table.get(k));
+		}
+		assertEquals(0, table.get(KEYS));
+	}
+}
@@ -0,0 +1,48 @@
+package part3;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that a page the {@link PageWriter} fails to write is reported by
+ * {@link PageWriter#flush()}, whatever the failure, instead of leaving it
+ * waiting forever.
+ */
+public class PageWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test(timeout = 10000)
+	public void flushReportsAPageThatCouldNotBeWritten() throws IOException {
+		PageWriter writer = new PageWriter(new MemoryManager());
+		ArrayList<int[]> rows = new ArrayList<int[]>();
+		// Writing it throws a NullPointerException on the writer's thread.
+		rows.add(null);
+		writer.write(folder.newFile().getPath(), rows, new int[] { 1 });
+		try {
+			writer.flush();
+			fail("The page was written.");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof NullPointerException);
+		}
+
+		// The writer carries on, and keeps reporting the failure.
+		ArrayList<int[]> more = new ArrayList<int[]>();
+		more.add(new int[] { 1 });
+		writer.write(folder.newFile().getPath(), more, new int[] { 1 });
+		try {
+			writer.flush();
+			fail("The failure was forgotten.");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof NullPointerException);
+		}
+	}
+}
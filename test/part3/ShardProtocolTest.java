@@ -0,0 +1,199 @@
+package part3;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import common.ModelFile;
+
+/**
+ * Checks that a tree built across {@link ShardWorker}s, through the
+ * {@link ShardCoordinator}, is the tree one process builds from all of the
+ * data, and that losing a worker ends the build cleanly. The workers run in
+ * this process, on loopback ports.
+ */
+public class ShardProtocolTest {
+
+	private static final String MUSHROOM = "resources/simple_mushroom.txt";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void shardsBuildTheSameTreeAsOneFile() throws Exception {
+		List<LocalWorker> workers = startWorkers(3001);
+		try {
+			byte[] sharded = save(buildSharded(workers));
+			for (LocalWorker worker : workers) {
+				worker.assertSessionCleanedUp();
+			}
+			assertArrayEquals(save(buildSingle()), sharded);
+		} finally {
+			for (LocalWorker worker : workers) {
+				worker.close();
+			}
+		}
+	}
+
+	@Test
+	public void losingAWorkerEndsTheBuildCleanly() throws Exception {
+		List<LocalWorker> workers = startWorkers(5001);
+		try {
+			BigDataDecisionTree tree = new BigDataDecisionTree(0, "e", "p");
+			assertEquals(1, tree.readShards(addresses(workers)));
+			// The root is counted; the worker goes before the first level is.
+			workers.get(1).session.close();
+			tree.createDecisionTree();
+			assertEquals(1, ModelFile.load(saveFile(tree).getPath()).size());
+			for (LocalWorker worker : workers) {
+				worker.assertSessionCleanedUp();
+			}
+
+			// Both workers are ready for the next build.
+			assertArrayEquals(save(buildSingle()), save(buildSharded(workers)));
+		} finally {
+			for (LocalWorker worker : workers) {
+				worker.close();
+			}
+		}
+	}
+
+	/**
+	 * Splits the mushroom file in two, and serves each part from a worker of its own.
+	 * @param split The line the second shard starts at.
+	 */
+	private List<LocalWorker> startWorkers(int split) throws IOException {
+		List<String> lines = Files.readAllLines(new File(MUSHROOM).toPath());
+		List<LocalWorker> workers = new ArrayList<LocalWorker>();
+		workers.add(new LocalWorker(write(lines.get(0), lines.subList(1, split)), folder.newFolder()));
+		workers.add(new LocalWorker(write(lines.get(0), lines.subList(split, lines.size())), folder.newFolder()));
+		return workers;
+	}
+
+	private BigDataDecisionTree buildSharded(List<LocalWorker> workers) {
+		BigDataDecisionTree tree = new BigDataDecisionTree(0, "e", "p");
+		assertEquals(1, tree.readShards(addresses(workers)));
+		tree.createDecisionTree();
+		return tree;
+	}
+
+	/**
+	 * Shards are built level-wise, so the tree to match is built level-wise from the whole file.
+	 */
+	private BigDataDecisionTree buildSingle() throws IOException {
+		BigDataDecisionTree tree = new BigDataDecisionTree(0, "e", "p");
+		tree.setPageDirectory(folder.newFolder().getPath());
+		tree.setLevelWise(true);
+		assertEquals(1, tree.readData(MUSHROOM));
+		tree.createDecisionTree();
+		return tree;
+	}
+
+	private static List<InetSocketAddress> addresses(List<LocalWorker> workers) {
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		for (LocalWorker worker : workers) {
+			addresses.add(new InetSocketAddress(worker.server.getInetAddress(), worker.server.getLocalPort()));
+		}
+		return addresses;
+	}
+
+	private byte[] save(BigDataDecisionTree tree) throws IOException {
+		return Files.readAllBytes(saveFile(tree).toPath());
+	}
+
+	private File saveFile(BigDataDecisionTree tree) throws IOException {
+		File model = folder.newFile();
+		tree.saveModel(model.getPath());
+		return model;
+	}
+
+	private File write(String header, List<String> rows) throws IOException {
+		File file = folder.newFile();
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			out.println(header);
+			for (String row : rows) {
+				out.println(row);
+			}
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * A shard worker serving one session at a time on a loopback port, the
+	 * way {@link ShardWorker#main(String[])} does, on a thread of its own.
+	 */
+	private static class LocalWorker implements Runnable {
+		final ServerSocket server;
+		private final ShardWorker worker;
+		private final File pages;
+		private final Thread thread;
+		// Released as each session ends.
+		private final Semaphore ended = new Semaphore(0);
+		volatile Socket session;
+
+		LocalWorker(File shard, File pages) throws IOException {
+			this.pages = pages;
+			server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+			worker = new ShardWorker(shard.getPath(), pages.getPath());
+			thread = new Thread(this, "shard-worker-" + server.getLocalPort());
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		public void run() {
+			while (true) {
+				Socket socket;
+				try {
+					socket = server.accept();
+				} catch (IOException e) {
+					return;
+				}
+				session = socket;
+				try {
+					worker.serve(socket);
+				} catch (IOException e) {
+					// The coordinator went away, or this end was closed.
+				} finally {
+					try {
+						socket.close();
+					} catch (IOException e) {
+						// Already closed.
+					}
+					ended.release();
+				}
+			}
+		}
+
+		/**
+		 * Waits for the session to end, and checks that it left no pages behind.
+		 */
+		void assertSessionCleanedUp() throws InterruptedException {
+			ended.acquire();
+			assertEquals(0, pages.list().length);
+		}
+
+		void close() throws IOException, InterruptedException {
+			server.close();
+			thread.join();
+		}
+	}
+}